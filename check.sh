@@ -12,8 +12,16 @@ export PICO=$(cd $(dirname "$0") && pwd)
 # Dependencies
 export CLASSPATH=$PICO/build/classes/java/main:$CFI/dist/checker-framework-inference.jar
 
+# Usage: check.sh [-d] [-i] <javac arguments>
+#   -d     debug, wait for a debugger at port 5050
+#   -i     typecheck with PICOInferenceChecker in its typechecking mode, i.e. fast mode: only the mutability
+#          hierarchy, without the freedom-before-commitment initialization analysis. Catches the mutability and
+#          assignability errors of PICOChecker, but not initialization errors, e.g. on every commit with the
+#          full check running nightly.
+
 # Command
 DEBUG=""
+STUBS=""
 CHECKER="pico.typecheck.PICOChecker"
 
 declare -a ARGS
@@ -25,8 +33,10 @@ for i in "$@" ; do
     fi
 
     if [[ $i == "-i" ]] ; then
-        echo "Typecheck using PICOInferenceChecker typechecking mode"
+        echo "Typecheck using PICOInferenceChecker typechecking mode: mutability only, no initialization checking"
         CHECKER="pico.inference.PICOInferenceChecker"
+        # The jdk stub is only found next to PICOChecker
+        STUBS="-Astubs=$PICO/src/main/java/pico/typecheck/jdk.astub"
         continue
     fi
     ARGS[${#ARGS[@]}]="$i"
@@ -35,9 +45,9 @@ done
 cmd=""
 
 if [ "$DEBUG" == "" ]; then
-	cmd="$JAVAC -cp "${CLASSPATH}" -processor "${CHECKER}" "${ARGS[@]}""
+	cmd="$JAVAC -cp "${CLASSPATH}" -processor "${CHECKER}" $STUBS "${ARGS[@]}""
 else
-	cmd="$JAVAC "$DEBUG" -cp "${CLASSPATH}" -processor "${CHECKER}" -AatfDoNotCache "${ARGS[@]}""
+	cmd="$JAVAC "$DEBUG" -cp "${CLASSPATH}" -processor "${CHECKER}" $STUBS -AatfDoNotCache "${ARGS[@]}""
 fi
 
 eval "$cmd"
@@ -19,6 +19,10 @@ CHECKER=pico.inference.PICOInferenceChecker
 
 SOLVER=pico.inference.solver.PICOSolverEngine
 
+SOLVER_ARGS=useGraph=false,collectStatistic=true
+
+MODE=ROUNDTRIP
+
 declare -a ARGS
 for i in "$@" ; do
     if [[ $i == "-ds" ]] ; then
@@ -26,16 +30,50 @@ for i in "$@" ; do
         SOLVER="checkers.inference.solver.DebugSolver"
         continue
     fi
+    # Save generated slots and constraints before solving: -checkpoint=constraints.ckpt
+    if [[ $i == -checkpoint=* ]] ; then
+        SOLVER_ARGS="$SOLVER_ARGS,checkpoint=$(realpath "${i#-checkpoint=}")"
+        continue
+    fi
+    # Solve a saved checkpoint without compiling the project again: -resume=constraints.ckpt
+    if [[ $i == -resume=* ]] ; then
+        CHECKPOINT=$(realpath "${i#-resume=}")
+        echo "Resuming from checkpoint $CHECKPOINT"
+        SOLVER_ARGS="$SOLVER_ARGS,resumeFrom=$CHECKPOINT"
+        RESUME_DIR=$(mktemp -d)
+        echo "class PICOCheckpointResume {}" > "$RESUME_DIR/PICOCheckpointResume.java"
+        ARGS[${#ARGS[@]}]="$RESUME_DIR/PICOCheckpointResume.java"
+        continue
+    fi
+    # Insert solutions in process instead of going through jaif and AFU for every file
+    if [[ $i == "-direct" ]] ; then
+        MODE=INFER
+        SOLVER_ARGS="$SOLVER_ARGS,insertTo=$(pwd)/annotated"
+        continue
+    fi
+    # Write the inferred summary of this module for modules depending on it: -summary=module.psum
+    if [[ $i == -summary=* ]] ; then
+        SOLVER_ARGS="$SOLVER_ARGS,summaryOut=$(realpath "${i#-summary=}")"
+        continue
+    fi
+    # Type check the solutions in the same JVM instead of compiling the annotated sources again
+    if [[ $i == "-verify" ]] ; then
+        SOLVER_ARGS="$SOLVER_ARGS,verify=true"
+        continue
+    fi
     ARGS[${#ARGS[@]}]="$i"
 done
 
-SOLVER_ARGS=useGraph=false,collectStatistic=true
-
 IS_HACK=true
 
 # echo "${ARGS[@]}"
 
 # Start the inference
-$CFI/scripts/inference-dev -m ROUNDTRIP --checker "$CHECKER" --solver "$SOLVER" \
-    --solverArgs="useGraph=false,collectStatistic=true" --hacks="$IS_HACK" \
+$CFI/scripts/inference-dev -m "$MODE" --checker "$CHECKER" --solver "$SOLVER" \
+    --solverArgs="$SOLVER_ARGS" --hacks="$IS_HACK" \
     -afud ./annotated "${ARGS[@]}"
+
+# Files the in-process writer couldn't handle still go through AFU
+if [[ $MODE == "INFER" && -s pico-insertion-fallback.txt ]] ; then
+    insert-annotations-to-source -d ./annotated default.jaif $(cat pico-insertion-fallback.txt)
+fi
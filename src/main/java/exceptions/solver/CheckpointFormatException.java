@@ -0,0 +1,11 @@
+package exceptions.solver;
+
+/**
+ * Thrown when a constraint checkpoint file cannot be decoded, e.g. because it was written by an
+ * incompatible version or is truncated.
+ */
+public class CheckpointFormatException extends SolverException {
+    public CheckpointFormatException(String reason) {
+        super(reason);
+    }
+}
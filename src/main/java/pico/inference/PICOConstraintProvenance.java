@@ -0,0 +1,145 @@
+package pico.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.SourcePositions;
+
+/**
+ * Which rule of PICOInfer produced a constraint or a slot domain restriction, and where in the
+ * source code. Used to map an unsat core back to the code that caused it.
+ *
+ * Every provenance is packed into one long of a growable array: 16 bits rule id, 24 bits file id,
+ * 24 bits line number. Rule names and file names are kept once in small tables. Constraints refer to
+ * their provenance by their position in the insertion order of ConstraintManager, which is the order
+ * solvers get them in, domain restrictions by slot id. Neither keeps a constraint reachable.
+ */
+public class PICOConstraintProvenance {
+
+    private static final int RULE_SHIFT = 48;
+    private static final int FILE_SHIFT = 24;
+    private static final long LINE_MASK = (1L << FILE_SHIFT) - 1;
+    private static final long FILE_MASK = (1L << (RULE_SHIFT - FILE_SHIFT)) - 1;
+
+    private final List<String> rules = new ArrayList<>();
+    private final Map<String, Integer> ruleIds = new HashMap<>();
+    private final List<String> files = new ArrayList<>();
+    private final Map<String, Integer> fileIds = new HashMap<>();
+
+    private long[] records = new long[1024];
+    private int size = 0;
+    /**Index into records plus one per constraint position, 0 if the constraint has no provenance*/
+    private int[] constraintRecords = new int[1024];
+    /**Index into records plus one per slot id, 0 if the slot's domain has no provenance*/
+    private int[] domainRecords = new int[1024];
+
+    /**
+     * Records the provenance of the constraints at positions [from, to), the ones ConstraintManager added
+     * since it had from constraints. Equal constraints are only added once, so only the first provenance of
+     * a constraint is kept.
+     */
+    public void record(int from, int to, String rule, CompilationUnitTree root, SourcePositions positions, Tree tree) {
+        if (from >= to) {
+            return;
+        }
+        if (to > constraintRecords.length) {
+            constraintRecords = Arrays.copyOf(constraintRecords, Math.max(constraintRecords.length * 2, to));
+        }
+        int record = add(rule, root, positions, tree) + 1;
+        for (int position = from; position < to; position++) {
+            constraintRecords[position] = record;
+        }
+    }
+
+    /**Forgets the provenance of constraints, e.g. when solving the constraints of another run*/
+    public void clearConstraints() {
+        Arrays.fill(constraintRecords, 0);
+    }
+
+    public void recordDomain(int slotId, String rule, CompilationUnitTree root, SourcePositions positions, Tree tree) {
+        if (slotId >= domainRecords.length) {
+            domainRecords = Arrays.copyOf(domainRecords, Math.max(domainRecords.length * 2, slotId + 1));
+        }
+        // A rule with a source position explains the restriction better than one without, e.g. "not @Bottom"
+        // of every slot
+        if (domainRecords[slotId] == 0 || (root != null && !hasSource(records[domainRecords[slotId] - 1]))) {
+            domainRecords[slotId] = add(rule, root, positions, tree) + 1;
+        }
+    }
+
+    /**@return "rule at file:line", or null if nothing was recorded for the constraint at position*/
+    public String describe(int position) {
+        int record = recordOf(position);
+        return record < 0 ? null : describe(records[record]);
+    }
+
+    /**@return "rule at file:line", or null if nothing was recorded for the domain of slot id*/
+    public String describeDomain(int slotId) {
+        if (slotId >= domainRecords.length || domainRecords[slotId] == 0) {
+            return null;
+        }
+        return describe(records[domainRecords[slotId] - 1]);
+    }
+
+    private int add(String rule, CompilationUnitTree root, SourcePositions positions, Tree tree) {
+        long line = 0;
+        int file = intern(root == null ? "" : root.getSourceFile().getName(), files, fileIds);
+        if (root != null && tree != null) {
+            long pos = positions.getStartPosition(root, tree);
+            if (pos != Diagnostic.NOPOS) {
+                line = Math.min(root.getLineMap().getLineNumber(pos), LINE_MASK);
+            }
+        }
+        if (size == records.length) {
+            records = Arrays.copyOf(records, size * 2);
+        }
+        records[size] = ((long) intern(rule, rules, ruleIds) << RULE_SHIFT) | ((long) file << FILE_SHIFT) | line;
+        return size++;
+    }
+
+    /**@return id of the rule that produced the constraint at position, -1 if nothing was recorded for it*/
+    public int ruleOf(int position) {
+        int record = recordOf(position);
+        return record < 0 ? -1 : (int) (records[record] >>> RULE_SHIFT);
+    }
+
+    private int recordOf(int position) {
+        return position < constraintRecords.length ? constraintRecords[position] - 1 : -1;
+    }
+
+    public String ruleName(int ruleId) {
+        return rules.get(ruleId);
+    }
+
+    public int ruleCount() {
+        return rules.size();
+    }
+
+    private boolean hasSource(long record) {
+        return !files.get((int) ((record >>> FILE_SHIFT) & FILE_MASK)).isEmpty();
+    }
+
+    private String describe(long record) {
+        String rule = rules.get((int) (record >>> RULE_SHIFT));
+        String file = files.get((int) ((record >>> FILE_SHIFT) & FILE_MASK));
+        long line = record & LINE_MASK;
+        return file.isEmpty() ? rule : rule + " at " + file + ":" + line;
+    }
+
+    private static int intern(String name, List<String> table, Map<String, Integer> ids) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = table.size();
+            table.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+}
@@ -1,5 +1,6 @@
 package pico.inference;
 
+import checkers.inference.BytecodeTypeAnnotator;
 import checkers.inference.InferenceAnnotatedTypeFactory;
 import checkers.inference.InferenceChecker;
 import checkers.inference.InferenceTreeAnnotator;
@@ -26,15 +27,22 @@ import org.checkerframework.framework.type.treeannotator.PropagationTreeAnnotato
 import org.checkerframework.framework.type.treeannotator.TreeAnnotator;
 import org.checkerframework.framework.type.typeannotator.ListTypeAnnotator;
 import org.checkerframework.framework.type.typeannotator.TypeAnnotator;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.Pair;
 import org.checkerframework.javacutil.TreeUtils;
 import pico.typecheck.PICOAnnotatedTypeFactory.PICOImplicitsTypeAnnotator;
+import pico.typecheck.PICOTrustedCode;
 import pico.typecheck.PICOTypeUtil;
 
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeKind;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import static pico.typecheck.PICOAnnotationMirrorHolder.IMMUTABLE;
 import static pico.typecheck.PICOAnnotationMirrorHolder.READONLY;
@@ -48,12 +56,60 @@ import static pico.typecheck.PICOAnnotationMirrorHolder.READONLY;
  * give solution to the VariableSlot, and there won't be annotations inserted to implicit locations.
  */
 public class PICOInferenceAnnotatedTypeFactory extends InferenceAnnotatedTypeFactory {
+
+    /**Generated sources whose elements get the types of the real type factory as constants, like bytecode*/
+    private final PICOTrustedCode trusted;
+    private final BytecodeTypeAnnotator trustedTypeAnnotator;
+    /**Whether each top level class is declared in trusted code*/
+    private final Map<Element, Boolean> trustedClasses = new HashMap<>();
+
     public PICOInferenceAnnotatedTypeFactory(InferenceChecker inferenceChecker, boolean withCombineConstraints, BaseAnnotatedTypeFactory realTypeFactory, InferrableChecker realChecker, SlotManager slotManager, ConstraintManager constraintManager) {
         super(inferenceChecker, withCombineConstraints, realTypeFactory, realChecker, slotManager, constraintManager);
+        trusted = realTypeFactory instanceof PICOInferenceRealTypeFactory ?
+                ((PICOInferenceRealTypeFactory) realTypeFactory).getTrustedCode() : PICOTrustedCode.NONE;
+        trustedTypeAnnotator = new BytecodeTypeAnnotator(this, realTypeFactory);
         // Always call postInit() at the end of ATF constructor!
         postInit();
     }
 
+    /**
+     * Signatures of trusted classes are annotated like the ones of bytecode classes: with the types of the real
+     * type factory as ConstantSlots, instead of VariableSlots created from their declaration trees when other code
+     * first uses them.
+     */
+    @Override
+    public void addComputedTypeAnnotations(Element element, AnnotatedTypeMirror type) {
+        if (isTrusted(element)) {
+            trustedTypeAnnotator.annotate(element, type);
+            return;
+        }
+        super.addComputedTypeAnnotations(element, type);
+    }
+
+    /**@return whether element is declared in a trusted package or in a compilation unit of a trusted source root*/
+    boolean isTrusted(Element element) {
+        if (trusted.isEmpty() || ElementUtils.isElementFromByteCode(element)) {
+            return false;
+        }
+        if (trusted.isTrusted(element)) {
+            return true;
+        }
+        TypeElement topLevel = ElementUtils.enclosingClass(element);
+        while (topLevel != null && ElementUtils.enclosingClass(topLevel.getEnclosingElement()) != null) {
+            topLevel = ElementUtils.enclosingClass(topLevel.getEnclosingElement());
+        }
+        if (topLevel == null) {
+            return false;
+        }
+        Boolean result = trustedClasses.get(topLevel);
+        if (result == null) {
+            TreePath path = trees.getPath(topLevel);
+            result = path != null && trusted.isTrusted(path.getCompilationUnit());
+            trustedClasses.put(topLevel, result);
+        }
+        return result;
+    }
+
     // Having PICOInferencePropagationTreeAnnotator before InferenceTreeAnnotator makes the inference behaviour
     // consistent with typechecking side: it will have untouched BinaryTrees and TypeCastTrees, with no VarAnnot.
     // as input. InferenceTreeAnnotator internally uses VariableAnnotator to insert VarAnnot to all kinds of tress
@@ -142,6 +198,12 @@ public class PICOInferenceAnnotatedTypeFactory extends InferenceAnnotatedTypeFac
 
             AnnotatedTypeMirror componentType = ((AnnotatedTypeMirror.AnnotatedArrayType) type).getComponentType();
 
+            if (PICOTypeUtil.isImplicitlyImmutableType(componentType)) {
+                // Component is the @Immutable constant whatever the initializers and the context are
+                applyImmutableIfImplicitlyImmutable(componentType);
+                return null;
+            }
+
             Collection<? extends AnnotationMirror> prev = null;
             if (tree.getInitializers() != null && tree.getInitializers().size() != 0) {
                 // We have initializers, either with or without an array type.
@@ -151,7 +213,13 @@ public class PICOInferenceAnnotatedTypeFactory extends InferenceAnnotatedTypeFac
                     // initType might be a typeVariable, so use effectiveAnnotations.
                     Collection<AnnotationMirror> annos = initType.getEffectiveAnnotations();
 
-                    prev = (prev == null) ? annos : atypeFactory.getQualifierHierarchy().leastUpperBounds(prev, annos);
+                    if (prev == null) {
+                        prev = annos;
+                    } else if (!AnnotationUtils.areSame(prev, annos)) {
+                        // Elements of generated array literals mostly have the same VarAnnots(e.g. the
+                        // constant of string literals). Their lub is themselves, so skip creating it.
+                        prev = atypeFactory.getQualifierHierarchy().leastUpperBounds(prev, annos);
+                    }
                 }
             } else {
                 prev = componentType.getAnnotations();
@@ -220,6 +288,12 @@ public class PICOInferenceAnnotatedTypeFactory extends InferenceAnnotatedTypeFac
         @Override
         public Void visitBinary(BinaryTree node, AnnotatedTypeMirror type) {
             applyImmutableIfImplicitlyImmutable(type);// Usually there isn't existing annotation on binary trees, but to be safe, run it first
+            if (PICOTypeUtil.isImplicitlyImmutableType(type)) {
+                // Same as typecheck side: the result is the @Immutable constant anyway. Don't compute the operand
+                // types and the lub of their VarAnnots, which recurses down long concatenation chains and creates
+                // a lub slot nothing refers to at every level.
+                return null;
+            }
             return super.visitBinary(node, type);
         }
 
@@ -7,20 +7,85 @@ import checkers.inference.InferenceVisitor;
 import checkers.inference.InferrableChecker;
 import checkers.inference.SlotManager;
 import checkers.inference.model.ConstraintManager;
+import com.sun.source.tree.CompilationUnitTree;
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 import org.checkerframework.framework.source.SupportedOptions;
 import pico.typecheck.PICOAnnotationMirrorHolder;
+import pico.typecheck.PICOStatistics;
+import pico.typecheck.PICOSummary;
+import pico.typecheck.PICOTrustedCode;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Main entry class
+ *
+ * Run as a plain checker(-processor pico.inference.PICOInferenceChecker, or check.sh -i), it is PICO's
+ * fast mode: {@link PICOInferenceVisitor} in typecheck mode over {@link PICOInferenceRealTypeFactory}, which has
+ * only the mutability hierarchy and uses the framework's default store and transfer function. It enforces the
+ * mutability and assignability rules of {@link pico.typecheck.PICOChecker}, but none of the
+ * freedom-before-commitment initialization ones: whether an object is being initialized is decided
+ * syntactically(constructors, initializers and methods with an @UnderInitialization receiver) instead of by
+ * the initialization hierarchy. The object identity warnings of ObjectIdentityMethodEnforcer aren't reported
+ * either. Pass the jdk stub of PICOChecker with -Astubs, check.sh -i does. FastModeTypecheckTest checks that the
+ * typecheck corpus gets the diagnostics of PICOChecker without those.
  */
-@SupportedOptions({"upcast", "anycast", "comparablecast", "optimalSolution"})
+@SupportedOptions({"upcast", "anycast", "comparablecast", "optimalSolution", PICOSummary.SUMMARIES, "cacheSize",
+        PICOTrustedCode.TRUSTED_PACKAGES, PICOInferenceProfiler.PROFILE, "printStatistics"})
 public class PICOInferenceChecker extends BaseInferrableChecker {
 
+    private final PICOStatistics statistics = new PICOStatistics();
+    private final PICOSlotDomains slotDomains = new PICOSlotDomains();
+    private final PICOConstraintProvenance provenance = new PICOConstraintProvenance();
+    private final PICOSlotLocations slotLocations = new PICOSlotLocations();
+    private final PICOVarAnnots varAnnots = new PICOVarAnnots();
+    /**Every compilation unit of the run, trusted ones too, in the order constraint generation reached them*/
+    private final Set<CompilationUnitTree> compilationUnits = new LinkedHashSet<>();
+    private PICOInferenceProfiler profiler;
+
     @Override
     public void initChecker() {
         super.initChecker();
         PICOAnnotationMirrorHolder.init(this);
+        profiler = PICOInferenceProfiler.fromOptions(this);
+    }
+
+    /**
+     * Printed together with the solver statistics. Counters on hot paths of constraint generation are only
+     * collected with option "printStatistics", same as in PICOChecker
+     */
+    public PICOStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**Filled during constraint generation, consumed by the solver*/
+    public PICOSlotDomains getSlotDomains() {
+        return slotDomains;
+    }
+
+    /**Where constraints came from, reported when they are unsatisfiable*/
+    public PICOConstraintProvenance getProvenance() {
+        return provenance;
+    }
+
+    /**Locations of VariableSlots until they are restored for writing solutions*/
+    public PICOSlotLocations getSlotLocations() {
+        return slotLocations;
+    }
+
+    /**VarAnnots of real qualifiers, shared by every constraint on a constant*/
+    public PICOVarAnnots getVarAnnots() {
+        return varAnnots;
+    }
+
+    public Set<CompilationUnitTree> getCompilationUnits() {
+        return compilationUnits;
+    }
+
+    /**@return null unless option "profile" is passed*/
+    public PICOInferenceProfiler getProfiler() {
+        return profiler;
     }
 
     @Override
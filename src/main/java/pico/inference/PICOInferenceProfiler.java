@@ -0,0 +1,327 @@
+package pico.inference;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import javax.lang.model.element.TypeElement;
+
+import org.checkerframework.framework.source.SourceChecker;
+import org.checkerframework.javacutil.TreeUtils;
+import org.checkerframework.javacutil.UserError;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+/**
+ * Opt-in profile of where constraints come from, enabled by option "profile"(optionally "profile=N" for the
+ * number of entries per table, 20 by default). Counts slots, constraints and encoded clauses per class,
+ * per method, per PICO rule and per constraint kind, and writes them to pico-inference-profile.csv and
+ * pico-inference-profile.json next to pico-inference-result.txt.
+ *
+ * While constraints are generated, only the scope being visited is tracked: every time it changes, the
+ * number of slots created so far is appended to a boundary table. Slot ids are handed out sequentially,
+ * so the table maps any slot id back to the class or method whose visit created it. A constraint is
+ * attributed to the scope of its newest slot, which is where the constraint was generated unless it only
+ * relates slots of earlier scopes. All counters are arrays indexed by interned ids.
+ */
+public class PICOInferenceProfiler {
+
+    public static final String PROFILE = "profile";
+    private static final int DEFAULT_TOP = 20;
+    private static final String GLOBAL = "(global)";
+    private static final String UNKNOWN_RULE = "(framework)";
+
+    /**Counters of one table, indexed by id of the entry*/
+    private static class Counters {
+        long[] slots = new long[64];
+        long[] constraints = new long[64];
+        long[] clauses = new long[64];
+
+        void ensure(int id) {
+            if (id >= slots.length) {
+                int length = Math.max(slots.length * 2, id + 1);
+                slots = Arrays.copyOf(slots, length);
+                constraints = Arrays.copyOf(constraints, length);
+                clauses = Arrays.copyOf(clauses, length);
+            }
+        }
+    }
+
+    private final int top;
+
+    private final List<String> scopeNames = new ArrayList<>();
+    private final Map<String, Integer> scopeIds = new HashMap<>();
+    /**Scope id of the class each scope belongs to*/
+    private int[] classOfScope = new int[64];
+    private final List<Integer> stack = new ArrayList<>();
+
+    /**Scope boundaries[i] is active for slot ids from slotBoundaries[i] until the next boundary*/
+    private int[] slotBoundaries = new int[1024];
+    private int[] boundaryScopes = new int[1024];
+    private int boundaries = 0;
+
+    private final List<String> kindNames = new ArrayList<>();
+    private final Map<Class<?>, Integer> kindIds = new HashMap<>();
+
+    private final Counters scopes = new Counters();
+    private final Counters kinds = new Counters();
+    private final Counters rules = new Counters();
+    /**Rule ids of PICOConstraintProvenance, shifted by one. 0 is UNKNOWN_RULE*/
+    private final List<String> ruleNames = new ArrayList<>();
+
+    private PICOInferenceProfiler(int top) {
+        this.top = top;
+        int global = scope(GLOBAL, -1);
+        mark(global);
+    }
+
+    /**@return the profiler, or null if option "profile" isn't passed*/
+    public static PICOInferenceProfiler fromOptions(SourceChecker checker) {
+        if (!checker.hasOption(PROFILE)) {
+            return null;
+        }
+        String option = checker.getOption(PROFILE);
+        if (option == null || option.isEmpty()) {
+            return new PICOInferenceProfiler(DEFAULT_TOP);
+        }
+        try {
+            int top = Integer.parseInt(option.trim());
+            if (top > 0) {
+                return new PICOInferenceProfiler(top);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new UserError("Option " + PROFILE + " must be a positive number of entries, got: " + option);
+    }
+
+    /**
+     * Called before the visitor descends into tree.
+     * @return whether a scope was entered. Only then {@link #exit()} must be called afterwards.
+     */
+    public boolean enter(Tree tree) {
+        int scope;
+        if (tree.getKind() == Tree.Kind.METHOD) {
+            int enclosing = currentScope();
+            int clazz = enclosing == 0 ? 0 : classOfScope[enclosing];
+            scope = scope(scopeNames.get(clazz) + "#" + signature((MethodTree) tree), clazz);
+        } else if (TreeUtils.isClassTree(tree)) {
+            TypeElement element = TreeUtils.elementFromDeclaration((ClassTree) tree);
+            String name = element.getQualifiedName().toString();
+            if (name.isEmpty()) {
+                // Anonymous class: count it with the class it's declared in
+                int enclosing = currentScope();
+                name = scopeNames.get(enclosing == 0 ? 0 : classOfScope[enclosing]);
+            }
+            scope = scope(name, -1);
+        } else {
+            return false;
+        }
+        stack.add(scope);
+        mark(scope);
+        return true;
+    }
+
+    /**Name and parameter types of method as written in the source, so that overloads are counted apart, e.g. "put(K,V)"*/
+    private static String signature(MethodTree method) {
+        StringJoiner parameters = new StringJoiner(",", method.getName() + "(", ")");
+        for (VariableTree parameter : method.getParameters()) {
+            parameters.add(parameter.getType().toString());
+        }
+        return parameters.toString();
+    }
+
+    public void exit() {
+        stack.remove(stack.size() - 1);
+        mark(currentScope());
+    }
+
+    private int currentScope() {
+        return stack.isEmpty() ? 0 : stack.get(stack.size() - 1);
+    }
+
+    /**@param clazz scope id of the enclosing class, -1 if name is a class itself*/
+    private int scope(String name, int clazz) {
+        Integer id = scopeIds.get(name);
+        if (id == null) {
+            id = scopeNames.size();
+            scopeNames.add(name);
+            scopeIds.put(name, id);
+            if (id >= classOfScope.length) {
+                classOfScope = Arrays.copyOf(classOfScope, classOfScope.length * 2);
+            }
+            classOfScope[id] = clazz < 0 ? id : clazz;
+        }
+        return id;
+    }
+
+    private void mark(int scope) {
+        // Not inferring, e.g. in fast mode, or before the slot manager exists
+        int slots = InferenceMain.getInstance() == null || InferenceMain.getInstance().getSlotManager() == null ? 0
+                : InferenceMain.getInstance().getSlotManager().getNumberOfSlots();
+        if (boundaries > 0 && slotBoundaries[boundaries - 1] == slots) {
+            // No slot was created in the previous scope
+            boundaryScopes[boundaries - 1] = scope;
+            return;
+        }
+        if (boundaries == slotBoundaries.length) {
+            slotBoundaries = Arrays.copyOf(slotBoundaries, boundaries * 2);
+            boundaryScopes = Arrays.copyOf(boundaryScopes, boundaries * 2);
+        }
+        slotBoundaries[boundaries] = slots;
+        boundaryScopes[boundaries] = scope;
+        boundaries++;
+    }
+
+    private int scopeOfSlot(int slotId) {
+        int low = 0;
+        int high = boundaries - 1;
+        // Last boundary that is <= slotId
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (slotBoundaries[mid] <= slotId) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return boundaryScopes[low];
+    }
+
+    /**Counts constraint, the position-th one of ConstraintManager, and the number of clauses it was encoded to*/
+    public void count(Constraint constraint, int position, int clauses, PICOConstraintProvenance provenance) {
+        int newest = -1;
+        for (Slot slot : constraint.getSlots()) {
+            newest = Math.max(newest, slot.getId());
+        }
+        int scope = newest < 0 ? 0 : scopeOfSlot(newest);
+        scopes.ensure(scope);
+        scopes.constraints[scope]++;
+        scopes.clauses[scope] += clauses;
+
+        Integer kind = kindIds.get(constraint.getClass());
+        if (kind == null) {
+            kind = kindNames.size();
+            kindNames.add(constraint.getClass().getSimpleName());
+            kindIds.put(constraint.getClass(), kind);
+        }
+        kinds.ensure(kind);
+        kinds.constraints[kind]++;
+        kinds.clauses[kind] += clauses;
+
+        int rule = provenance.ruleOf(position) + 1;
+        rules.ensure(rule);
+        rules.constraints[rule]++;
+        rules.clauses[rule] += clauses;
+    }
+
+    /**Prints the top entries of each table and writes all entries to pico-inference-profile.csv/json*/
+    public void report(PICOConstraintProvenance provenance) {
+        // Slots per scope, from the boundaries up to the number of slots in the end
+        mark(currentScope());
+        for (int i = 0; i + 1 < boundaries; i++) {
+            scopes.ensure(boundaryScopes[i]);
+            scopes.slots[boundaryScopes[i]] += slotBoundaries[i + 1] - slotBoundaries[i];
+        }
+        Counters classes = new Counters();
+        List<String> classNames = new ArrayList<>();
+        List<String> methodNames = new ArrayList<>();
+        Counters methods = new Counters();
+        scopes.ensure(scopeNames.size());
+        for (int scope = 0; scope < scopeNames.size(); scope++) {
+            int clazz = classOfScope[scope];
+            classes.ensure(clazz);
+            classes.slots[clazz] += scopes.slots[scope];
+            classes.constraints[clazz] += scopes.constraints[scope];
+            classes.clauses[clazz] += scopes.clauses[scope];
+            if (clazz != scope) {
+                methods.ensure(scope);
+                methods.slots[scope] = scopes.slots[scope];
+                methods.constraints[scope] = scopes.constraints[scope];
+                methods.clauses[scope] = scopes.clauses[scope];
+            }
+        }
+        for (int scope = 0; scope < scopeNames.size(); scope++) {
+            classNames.add(classOfScope[scope] == scope ? scopeNames.get(scope) : null);
+            methodNames.add(classOfScope[scope] == scope ? null : scopeNames.get(scope));
+        }
+        ruleNames.clear();
+        ruleNames.add(UNKNOWN_RULE);
+        for (int rule = 0; rule < provenance.ruleCount(); rule++) {
+            ruleNames.add(provenance.ruleName(rule));
+        }
+
+        String[] levels = {"class", "method", "rule", "kind"};
+        Counters[] tables = {classes, methods, rules, kinds};
+        List<List<String>> names = Arrays.asList(classNames, methodNames, ruleNames, kindNames);
+
+        String dir = new File("").getAbsolutePath() + File.separator;
+        try (PrintWriter csv = new PrintWriter(dir + "pico-inference-profile.csv");
+             PrintWriter json = new PrintWriter(dir + "pico-inference-profile.json")) {
+            csv.println("level,name,slots,constraints,clauses");
+            json.println("{");
+            for (int t = 0; t < tables.length; t++) {
+                Integer[] order = sortedByClauses(tables[t], names.get(t));
+                System.out.println("\n=== Top " + Math.min(top, order.length) + " " + levels[t] + " by clauses ===");
+                System.out.format("%12s%12s%12s  %s\n", "clauses", "constraints", "slots", levels[t]);
+                json.println("  \"" + levels[t] + "\": [");
+                for (int i = 0; i < order.length; i++) {
+                    int id = order[i];
+                    String name = names.get(t).get(id);
+                    long slots = tables[t].slots[id];
+                    long constraints = tables[t].constraints[id];
+                    long clauses = tables[t].clauses[id];
+                    if (i < top) {
+                        System.out.format("%12d%12d%12d  %s\n", clauses, constraints, slots, name);
+                    }
+                    csv.println(levels[t] + "," + csvField(name) + "," + slots + "," + constraints + "," + clauses);
+                    json.println("    {\"name\": " + jsonString(name) + ", \"slots\": " + slots
+                            + ", \"constraints\": " + constraints + ", \"clauses\": " + clauses + "}"
+                            + (i + 1 < order.length ? "," : ""));
+                }
+                json.println("  ]" + (t + 1 < tables.length ? "," : ""));
+            }
+            json.println("}");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**@return ids of the named entries that have anything counted, most clauses first*/
+    private static Integer[] sortedByClauses(Counters counters, List<String> names) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < names.size(); id++) {
+            counters.ensure(id);
+            if (names.get(id) != null && (counters.slots[id] > 0 || counters.constraints[id] > 0)) {
+                ids.add(id);
+            }
+        }
+        ids.sort((a, b) -> Long.compare(counters.clauses[b], counters.clauses[a]) != 0
+                ? Long.compare(counters.clauses[b], counters.clauses[a])
+                : Long.compare(counters.constraints[b], counters.constraints[a]));
+        return ids.toArray(new Integer[0]);
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonString(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
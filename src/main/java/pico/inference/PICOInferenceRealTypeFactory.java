@@ -16,6 +16,7 @@ import javax.lang.model.element.Element;
 
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.framework.flow.CFValue;
 import org.checkerframework.framework.qual.RelevantJavaTypes;
 import org.checkerframework.framework.type.AbstractViewpointAdapter;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
@@ -27,14 +28,19 @@ import org.checkerframework.framework.type.typeannotator.ListTypeAnnotator;
 import org.checkerframework.framework.type.typeannotator.PropagationTypeAnnotator;
 import org.checkerframework.framework.type.typeannotator.TypeAnnotator;
 import org.checkerframework.javacutil.BugInCF;
+import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.TreeUtils;
 
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.Tree;
 
 import pico.typecheck.PICOAnnotatedTypeFactory.PICOImplicitsTypeAnnotator;
 import pico.typecheck.PICOAnnotatedTypeFactory.PICOPropagationTreeAnnotator;
 import pico.typecheck.PICOAnnotatedTypeFactory.PICOTreeAnnotator;
 import pico.typecheck.PICOAnnotatedTypeFactory.PICOTypeAnnotator;
+import pico.typecheck.PICOLhsTypeCache;
+import pico.typecheck.PICOSummary;
+import pico.typecheck.PICOTrustedCode;
 import pico.typecheck.PICOTypeUtil;
 import pico.typecheck.PICOViewpointAdapter;
 import qual.Bottom;
@@ -53,12 +59,48 @@ import qual.ReceiverDependantMutable;
  */
 public class PICOInferenceRealTypeFactory extends BaseAnnotatedTypeFactory {
 
+    /**Inferred solutions treated as explicit annotations. Only set for verifying an inference result*/
+    private final PICOInferredSolutions inferredSolutions;
+    /**Summaries of other modules, consulted for their bytecode like stub files*/
+    private final List<PICOSummary> summaries;
+    /**Generated sources that are treated like bytecode*/
+    private final PICOTrustedCode trusted;
+    /**Types computed by getAnnotatedTypeLhs, which must not go to the tree cache*/
+    private final PICOLhsTypeCache lhsTypes;
+
     public PICOInferenceRealTypeFactory(BaseTypeChecker checker, boolean useFlow) {
+        this(checker, useFlow, null);
+    }
+
+    /**
+     * Creates a factory that sees inferred solutions as if they were written in the source. Used by
+     * {@link PICOInferenceVerifier}, so it doesn't share any cached types with the factory used during inference.
+     */
+    public PICOInferenceRealTypeFactory(BaseTypeChecker checker, boolean useFlow, PICOInferredSolutions inferredSolutions) {
         super(checker, useFlow);
+        this.inferredSolutions = inferredSolutions;
+        this.summaries = PICOSummary.fromOptions(checker);
+        this.trusted = PICOTrustedCode.fromOptions(checker);
+        this.lhsTypes = new PICOLhsTypeCache(PICOTypeUtil.getCacheSize(checker),
+                checker.hasOption("printStatistics") ? ((PICOInferenceChecker) checker).getStatistics() : null);
         addAliasedAnnotation(org.jmlspecs.annotation.Readonly.class, READONLY);
         postInit();
     }
 
+    @Override
+    public void setRoot(CompilationUnitTree root) {
+        lhsTypes.clear();
+        super.setRoot(root);
+    }
+
+    public List<PICOSummary> getSummaries() {
+        return summaries;
+    }
+
+    public PICOTrustedCode getTrustedCode() {
+        return trusted;
+    }
+
     /**Only support mutability qualifier hierarchy*/
     @Override
     protected Set<Class<? extends Annotation>> createSupportedTypeQualifiers() {
@@ -140,8 +182,25 @@ public class PICOInferenceRealTypeFactory extends BaseAnnotatedTypeFactory {
         return;// Don't add annotations from class element
     }
 
+    /**Inferred solutions must be applied before any defaulting, exactly like explicit annotations*/
+    @Override
+    protected void addComputedTypeAnnotations(Tree tree, AnnotatedTypeMirror type, boolean iUseFlow) {
+        if (inferredSolutions != null) {
+            inferredSolutions.applyToTree(tree, type);
+        }
+        super.addComputedTypeAnnotations(tree, type, iUseFlow);
+    }
+
     @Override
     public void addComputedTypeAnnotations(Element elt, AnnotatedTypeMirror type) {
+        if (inferredSolutions != null) {
+            inferredSolutions.applyToDeclaration(elt, declarationFromElement(elt), type);
+        }
+        if (!summaries.isEmpty() && (ElementUtils.isElementFromByteCode(elt) || trusted.isTrusted(elt))) {
+            for (PICOSummary summary : summaries) {
+                summary.apply(elt, type, this);
+            }
+        }
         PICOTypeUtil.addDefaultForField(this, type, elt);
         PICOTypeUtil.defaultConstructorReturnToClassBound(this, elt, type);
         PICOTypeUtil.applyImmutableToEnumAndEnumConstant(type);
@@ -152,10 +211,15 @@ public class PICOInferenceRealTypeFactory extends BaseAnnotatedTypeFactory {
     // TODO This method is completely copied from PICOAnnotatedTypeFactory
     @Override
     public AnnotatedTypeMirror getAnnotatedTypeLhs(Tree lhsTree) {
-        AnnotatedTypeMirror result = null;
+        CFValue flowValue = flowResult == null ? null : getInferredValueFor(lhsTree);
+        AnnotatedTypeMirror result = lhsTypes.get(lhsTree, flowValue);
+        if (result != null) {
+            return result;
+        }
         boolean oldShouldCache = shouldCache;
         // Don't cache the result because getAnnotatedType(lhsTree) could
         // be called from elsewhere and would expect flow-sensitive type refinements.
+        // It goes to lhsTypes instead.
         shouldCache = false;
         switch (lhsTree.getKind()) {
             case VARIABLE:
@@ -178,6 +242,7 @@ public class PICOInferenceRealTypeFactory extends BaseAnnotatedTypeFactory {
                 }
         }
         shouldCache = oldShouldCache;
+        lhsTypes.put(lhsTree, flowValue, result);
 
         return result;
     }
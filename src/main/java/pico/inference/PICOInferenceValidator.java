@@ -53,7 +53,7 @@ public class PICOInferenceValidator extends InferenceValidator{
     }
 
     private void checkStaticReceiverDependantMutableError(AnnotatedTypeMirror type, Tree tree) {
-        if (PICOTypeUtil.inStaticScope(visitor.getCurrentPath())) {
+        if (((PICOInferenceVisitor) visitor).scopes.inStaticScope(visitor.getCurrentPath())) {
             if (infer) {
                 ((PICOInferenceVisitor)visitor).mainIsNot(type, RECEIVER_DEPENDANT_MUTABLE, "static.receiverdependantmutable.forbidden", tree);
             } else {
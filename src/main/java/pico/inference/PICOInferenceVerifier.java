@@ -0,0 +1,86 @@
+package pico.inference;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import org.checkerframework.javacutil.TreeUtils;
+import pico.typecheck.PICOSummary;
+import pico.typecheck.PICOTrustedCode;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import java.io.File;
+
+/**
+ * Type checks an inference result within the inference JVM. The ROUNDTRIP_TYPECHECK mode of CFI
+ * inserts the solutions into copies of the sources and launches javac on them again, parsing and
+ * attributing everything a second time. Here the trees of the current compilation are reused: a
+ * fresh {@link PICOInferenceRealTypeFactory} reads the solutions as explicit annotations and
+ * {@link PICOInferenceVisitor} re-runs only its checking pass(infer == false) over them.
+ *
+ * Errors are reported by the real checker, same as typechecking the annotated sources would.
+ * The same factory also provides the types from which the module's {@link PICOSummary} is written.
+ */
+public class PICOInferenceVerifier {
+
+    private PICOInferenceVerifier() {}
+
+    /**
+     * Checks every compilation unit that isn't trusted, not only the ones that have solutions:
+     * a unit without slots of its own can still use declarations whose solutions don't fit it.
+     * @return number of compilation units checked
+     */
+    public static int verify(InferenceResult result, ProcessingEnvironment processingEnv) {
+        InferenceMain inferenceMain = InferenceMain.getInstance();
+        PICOInferredSolutions solutions = new PICOInferredSolutions(
+                inferenceMain.getSlotManager().getVariableSlots(), result, processingEnv);
+        PICOInferenceChecker realChecker = (PICOInferenceChecker) inferenceMain.getRealChecker();
+        PICOInferenceRealTypeFactory factory = createFactory(solutions);
+        PICOInferenceVisitor visitor = new PICOInferenceVisitor(realChecker, inferenceMain.getInferenceChecker(), factory, false);
+        PICOTrustedCode trusted = PICOTrustedCode.fromOptions(realChecker);
+        int checked = 0;
+        for (CompilationUnitTree unit : realChecker.getCompilationUnits()) {
+            if (trusted.isTrusted(unit)) {
+                continue;
+            }
+            visitor.setRoot(unit);
+            visitor.visit(new TreePath(unit));
+            checked++;
+        }
+        return checked;
+    }
+
+    /**Real type factory that sees solutions as explicit annotations*/
+    public static PICOInferenceRealTypeFactory createFactory(PICOInferredSolutions solutions) {
+        PICOInferenceChecker realChecker = (PICOInferenceChecker) InferenceMain.getInstance().getRealChecker();
+        return new PICOInferenceRealTypeFactory(realChecker, true, solutions);
+    }
+
+    /**Writes the summary of every class in the compilation units that have solutions*/
+    public static void writeSummary(File file, InferenceResult result, ProcessingEnvironment processingEnv) {
+        PICOInferredSolutions solutions = new PICOInferredSolutions(
+                InferenceMain.getInstance().getSlotManager().getVariableSlots(), result, processingEnv);
+        PICOInferenceRealTypeFactory factory = createFactory(solutions);
+        PICOSummary.Builder summary = new PICOSummary.Builder();
+        for (CompilationUnitTree unit : solutions.getCompilationUnits()) {
+            factory.setRoot(unit);
+            for (Tree typeDecl : unit.getTypeDecls()) {
+                if (TreeUtils.isClassTree(typeDecl)) {
+                    addClass(TreeUtils.elementFromDeclaration((ClassTree) typeDecl), factory, summary);
+                }
+            }
+        }
+        summary.write(file);
+    }
+
+    private static void addClass(TypeElement element, PICOInferenceRealTypeFactory factory, PICOSummary.Builder summary) {
+        summary.addClass(element, factory);
+        for (TypeElement member : ElementFilter.typesIn(element.getEnclosedElements())) {
+            addClass(member, factory, summary);
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package pico.inference;
 
+import checkers.inference.InferenceMain;
+import checkers.inference.SlotManager;
+import checkers.inference.model.Slot;
 import checkers.inference.util.InferenceViewpointAdapter;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import pico.typecheck.PICOStatistics;
 import pico.typecheck.PICOTypeUtil;
 
 import javax.lang.model.element.AnnotationMirror;
@@ -11,8 +15,25 @@ import javax.lang.model.type.TypeKind;
 
 public class PICOInferenceViewpointAdapter extends InferenceViewpointAdapter{
 
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Result of combining receiver slot id(high 32 bits) with declared slot id(low 32 bits). The combine
+     * constraint determines the result from its two operands, so a pair combined before, e.g. by repeated
+     * this.a.x in a loop, reuses its CombVariableSlot instead of creating another slot and constraint.
+     * Open addressing on the primitive keys, so that a lookup doesn't box its key. A bucket is free if it has
+     * no result.
+     */
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private AnnotationMirror[] results = new AnnotationMirror[INITIAL_CAPACITY];
+    private int size = 0;
+    /**Null unless option "printStatistics" is passed*/
+    private final PICOStatistics statistics;
+
     public PICOInferenceViewpointAdapter(AnnotatedTypeFactory atypeFactory) {
         super(atypeFactory);
+        PICOInferenceChecker checker = (PICOInferenceChecker) InferenceMain.getInstance().getRealChecker();
+        statistics = checker.hasOption("printStatistics") ? checker.getStatistics() : null;
     }
 
     @Override
@@ -30,4 +51,72 @@ public class PICOInferenceViewpointAdapter extends InferenceViewpointAdapter{
         }
         return super.combineAnnotationWithType(receiverAnnotation, declared);
     }
+
+    @Override
+    protected AnnotationMirror combineAnnotationWithAnnotation(AnnotationMirror receiverAnnotation, AnnotationMirror declaredAnnotation) {
+        SlotManager slotManager = InferenceMain.getInstance().getSlotManager();
+        Slot receiverSlot = slotManager.getSlot(receiverAnnotation);
+        Slot declaredSlot = slotManager.getSlot(declaredAnnotation);
+        if (receiverSlot == null || declaredSlot == null) {
+            return super.combineAnnotationWithAnnotation(receiverAnnotation, declaredAnnotation);
+        }
+        long key = ((long) receiverSlot.getId() << 32) | (declaredSlot.getId() & 0xFFFFFFFFL);
+        AnnotationMirror result = lookup(key);
+        if (result != null) {
+            if (statistics != null) {
+                statistics.increment("combine.memo.hits");
+            }
+            return result;
+        }
+        if (statistics != null) {
+            statistics.increment("combine.memo.misses");
+        }
+        result = super.combineAnnotationWithAnnotation(receiverAnnotation, declaredAnnotation);
+        if (result != null) {
+            store(key, result);
+        }
+        return result;
+    }
+
+    private AnnotationMirror lookup(long key) {
+        int mask = keys.length - 1;
+        for (int i = bucket(key, mask); results[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return results[i];
+            }
+        }
+        return null;
+    }
+
+    private void store(long key, AnnotationMirror result) {
+        // Grow past half full, probes stay short
+        if (++size * 2 > keys.length) {
+            long[] oldKeys = keys;
+            AnnotationMirror[] oldResults = results;
+            keys = new long[oldKeys.length * 2];
+            results = new AnnotationMirror[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldResults[i] != null) {
+                    insert(oldKeys[i], oldResults[i]);
+                }
+            }
+        }
+        insert(key, result);
+    }
+
+    private void insert(long key, AnnotationMirror result) {
+        int mask = keys.length - 1;
+        int i = bucket(key, mask);
+        while (results[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        results[i] = result;
+    }
+
+    /**Slot ids are sequential, so mix both halves before masking*/
+    private static int bucket(long key, int mask) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
 }
@@ -7,8 +7,8 @@ import static pico.typecheck.PICOAnnotationMirrorHolder.READONLY;
 import static pico.typecheck.PICOAnnotationMirrorHolder.RECEIVER_DEPENDANT_MUTABLE;
 
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -17,10 +17,12 @@ import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeKind;
 
+import org.checkerframework.checker.initialization.qual.UnderInitialization;
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 import org.checkerframework.framework.source.Result;
 import org.checkerframework.framework.type.AnnotatedTypeFactory.ParameterizedMethodType;
@@ -40,6 +42,7 @@ import com.sun.source.tree.AssignmentTree;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompoundAssignmentTree;
 import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
 import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewArrayTree;
@@ -63,6 +66,9 @@ import checkers.inference.model.EqualityConstraint;
 import checkers.inference.model.InequalityConstraint;
 import checkers.inference.model.Slot;
 import checkers.inference.model.SubtypeConstraint;
+import pico.typecheck.PICOScopeStack;
+import pico.typecheck.PICOStatistics;
+import pico.typecheck.PICOTrustedCode;
 import pico.typecheck.PICOTypeUtil;
 
 /**
@@ -71,8 +77,126 @@ import pico.typecheck.PICOTypeUtil;
  */
 public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker, BaseAnnotatedTypeFactory> {
 
+    /**Scope of the tree being visited, queried by PICOInferenceValidator for every validated type*/
+    final PICOScopeStack scopes = new PICOScopeStack();
+    /**Generated sources that aren't checked or inferred*/
+    private final PICOTrustedCode trusted;
+    /**Null unless option "printStatistics" is passed*/
+    private final PICOStatistics statistics;
+    /**Result of initializesReceiver(MethodTree) per method of the class being visited*/
+    private final Map<MethodTree, Boolean> initializingMethods = new HashMap<>();
+    /**Bounds of every catch parameter and thrown expression, created on first use*/
+    private Set<AnnotationMirror> exceptionParameterLowerBound;
+    private Set<AnnotationMirror> throwUpperBound;
+
     public PICOInferenceVisitor(PICOInferenceChecker checker, InferenceChecker ichecker, BaseAnnotatedTypeFactory factory, boolean infer) {
         super(checker, ichecker, factory, infer);
+        trusted = PICOTrustedCode.fromOptions(checker);
+        statistics = checker.hasOption("printStatistics") ? checker.getStatistics() : null;
+    }
+
+    /**
+     * Classes of trusted units aren't visited, so none of their trees get slots. Uses of their elements
+     * from other code get the types of the real type factory as constants, same as bytecode.
+     */
+    @Override
+    public void visit(TreePath path) {
+        if (infer) {
+            checker.getCompilationUnits().add(path.getCompilationUnit());
+        }
+        if (trusted.isTrusted(path.getCompilationUnit())) {
+            checker.getStatistics().increment("trusted.skipped.classes");
+            return;
+        }
+        initializingMethods.clear();
+        PICOInferenceProfiler profiler = checker.getProfiler();
+        boolean profiled = profiler != null && profiler.enter(path.getLeaf());
+        try {
+            super.visit(path);
+        } finally {
+            if (profiled) {
+                profiler.exit();
+            }
+        }
+    }
+
+    /**
+     * "not @mod" of a slot to be inferred only restricts the domain of that slot, so it's recorded in
+     * PICOSlotDomains instead of generating an InequalityConstraint against a ConstantSlot.
+     */
+    @Override
+    public void mainIsNot(AnnotatedTypeMirror ty, AnnotationMirror mod, String msgkey, Tree node) {
+        if (infer) {
+            Slot slot = InferenceMain.getInstance().getSlotManager().getVariableSlot(ty);
+            if (slot != null && !(slot instanceof ConstantSlot)) {
+                checker.getSlotDomains().forbid(slot.getId(), mod);
+                checker.getProvenance().recordDomain(slot.getId(), msgkey, root, positions, node);
+                if (statistics != null) {
+                    statistics.increment("domain.folded.constraints");
+                }
+                return;
+            }
+        }
+        int from = infer ? constraintCount() : 0;
+        super.mainIsNot(ty, mod, msgkey, node);
+        if (infer) {
+            recordProvenance(from, msgkey, node);
+        }
+    }
+
+    // The overrides below only record provenance of the constraints super added, with msgkey as the rule
+
+    @Override
+    public void mainIs(AnnotatedTypeMirror ty, AnnotationMirror mod, String msgkey, Tree node) {
+        int from = infer ? constraintCount() : 0;
+        super.mainIs(ty, mod, msgkey, node);
+        if (infer) {
+            recordProvenance(from, msgkey, node);
+        }
+    }
+
+    @Override
+    public void mainIsSubtype(AnnotatedTypeMirror ty, AnnotationMirror mod, String msgkey, Tree node) {
+        int from = infer ? constraintCount() : 0;
+        super.mainIsSubtype(ty, mod, msgkey, node);
+        if (infer) {
+            recordProvenance(from, msgkey, node);
+        }
+    }
+
+    @Override
+    public void areEqual(AnnotatedTypeMirror ty1, AnnotatedTypeMirror ty2, String msgkey, Tree node) {
+        int from = infer ? constraintCount() : 0;
+        super.areEqual(ty1, ty2, msgkey, node);
+        if (infer) {
+            recordProvenance(from, msgkey, node);
+        }
+    }
+
+    @Override
+    public void areComparable(AnnotatedTypeMirror ty1, AnnotatedTypeMirror ty2, String msgkey, Tree node) {
+        int from = infer ? constraintCount() : 0;
+        super.areComparable(ty1, ty2, msgkey, node);
+        if (infer) {
+            recordProvenance(from, msgkey, node);
+        }
+    }
+
+    @Override
+    public Void scan(Tree tree, Void p) {
+        boolean pushed = scopes.push(tree, getCurrentPath());
+        PICOInferenceProfiler profiler = checker.getProfiler();
+        boolean profiled = profiler != null && tree != null && profiler.enter(tree);
+        try {
+            return super.scan(tree, p);
+        } finally {
+            if (pushed) {
+                scopes.pop();
+            }
+            if (profiled) {
+                profiler.exit();
+            }
+        }
     }
 
     @Override
@@ -84,7 +208,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
     public boolean isValidUse(AnnotatedDeclaredType declarationType, AnnotatedDeclaredType useType, Tree tree) {
         if (infer) {
             mainIsNot(declarationType, READONLY, "type.invalid.annotations.on.use", tree);
-            addMutableImmutableRdmIncompatibleConstraints(declarationType, useType);
+            addMutableImmutableRdmIncompatibleConstraints(declarationType, useType, tree);
             return true;
         } else {
             AnnotationMirror declared = declarationType.getAnnotationInHierarchy(READONLY);
@@ -108,7 +232,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         }
     }
 
-    private void addMutableImmutableRdmIncompatibleConstraints(AnnotatedDeclaredType declarationType, AnnotatedDeclaredType useType) {
+    private void addMutableImmutableRdmIncompatibleConstraints(AnnotatedDeclaredType declarationType, AnnotatedDeclaredType useType, Tree tree) {
         final ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
         final SlotManager slotManager = InferenceMain.getInstance().getSlotManager();
         Slot declSlot = slotManager.getVariableSlot(declarationType);
@@ -119,16 +243,34 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         // declType == @Mutable -> useType != @Immutable
         Constraint isMutable = constraintManager.createEqualityConstraint(declSlot, mutable);
         Constraint notImmutable = constraintManager.createInequalityConstraint(useSlot, immutable);
-        constraintManager.addImplicationConstraint(Arrays.asList(isMutable), notImmutable);
+        addImplication(isMutable, notImmutable, "addMutableImmutableRdmIncompatibleConstraints", tree);
         // declType == @Mutable -> useType != @ReceiverDependantMutable
         Constraint notRDM = constraintManager.createInequalityConstraint(useSlot, rdm);
-        constraintManager.addImplicationConstraint(Arrays.asList(isMutable), notRDM);
+        addImplication(isMutable, notRDM, "addMutableImmutableRdmIncompatibleConstraints", tree);
         // declType == @Immutable -> useType != @Mutable
         Constraint isImmutable = constraintManager.createEqualityConstraint(declSlot, immutable);
         Constraint notMutable = constraintManager.createInequalityConstraint(useSlot, mutable);
-        constraintManager.addImplicationConstraint(Arrays.asList(isImmutable), notMutable);
+        addImplication(isImmutable, notMutable, "addMutableImmutableRdmIncompatibleConstraints", tree);
         // declType == @Immutable -> useType != @ReceiverDependantMutable
-        constraintManager.addImplicationConstraint(Arrays.asList(isImmutable), notRDM);
+        addImplication(isImmutable, notRDM, "addMutableImmutableRdmIncompatibleConstraints", tree);
+    }
+
+    /**Adds assumption -> conclusion and records which rule added it for which tree*/
+    private void addImplication(Constraint assumption, Constraint conclusion, String rule, Tree tree) {
+        ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
+        int from = constraintCount();
+        constraintManager.addImplicationConstraint(Arrays.asList(assumption), conclusion);
+        recordProvenance(from, rule, tree);
+    }
+
+    /**@return number of constraints added so far, which is the position of the next one*/
+    private static int constraintCount() {
+        return InferenceMain.getInstance().getConstraintManager().getConstraints().size();
+    }
+
+    /**Records rule and tree as provenance of the constraints added since there were from*/
+    private void recordProvenance(int from, String rule, Tree tree) {
+        checker.getProvenance().record(from, constraintCount(), rule, root, positions, tree);
     }
 
     @Override
@@ -249,7 +391,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
                 Constraint inequalityConstraint = constraintManager.createInequalityConstraint(boundSlot, rdmSlot);
                 Constraint subtypeConstraint = constraintManager.createSubtypeConstraint(consRetSlot, boundSlot);
                 // bound != @ReceiverDependantMutable -> consRet <: bound
-                constraintManager.addImplicationConstraint(Arrays.asList(inequalityConstraint), subtypeConstraint);
+                addImplication(inequalityConstraint, subtypeConstraint, "visitMethod", node);
             } else {
                 if (constructorReturnType.hasAnnotation(READONLY)) {
                     checker.report(Result.failure("constructor.return.invalid", constructorReturnType), node);
@@ -273,7 +415,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
             // Above is additional preference logic
             if (declaredReceiverType != null) {
                 if (infer) {
-                    addMutableImmutableRdmIncompatibleConstraints(bound, declaredReceiverType);
+                    addMutableImmutableRdmIncompatibleConstraints(bound, declaredReceiverType, node);
                 } else {
                     if (!bound.hasAnnotation(RECEIVER_DEPENDANT_MUTABLE)
                             && !atypeFactory.getQualifierHierarchy().isSubtype(
@@ -490,7 +632,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
                 Slot receiver_dependant_mutable = slotManager.getSlot(RECEIVER_DEPENDANT_MUTABLE);
                 Constraint receiverReadOnly = constraintManager.createEqualityConstraint(receiverSlot, readonly);
                 Constraint fieldNotRDM = constraintManager.createInequalityConstraint(fieldSlot, receiver_dependant_mutable);
-                constraintManager.addImplicationConstraint(Arrays.asList(receiverReadOnly), fieldNotRDM);
+                addImplication(receiverReadOnly, fieldNotRDM, "checkAssignableField", node);
             } else {
                 if (receiverType.hasAnnotation(READONLY) && fieldType.hasAnnotation(RECEIVER_DEPENDANT_MUTABLE)) {
                     reportFieldOrArrayWriteError(node, variable, receiverType);
@@ -550,7 +692,11 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         Element element = TreeUtils.elementFromUse(variable);
         // If the assignment is not field assignment, there is no possibility of initializing object.
         if (element == null || !element.getKind().isField()) return false;
-        TreePath treePath = atypeFactory.getPath(variable);
+        // variable is the tree being visited, so its path is at hand without searching the compilation unit
+        TreePath treePath = getCurrentPath();
+        if (treePath == null || treePath.getLeaf() != variable) {
+            treePath = atypeFactory.getPath(variable);
+        }
         if (treePath == null) return false;
 
         if (TreeUtils.enclosingTopLevelBlock(treePath) != null) {
@@ -562,20 +708,33 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         // No possibility of initialiazing object if the assignment is not within constructor or method(both MethodTree)
         if (enclosingMethod == null) return false;
         // At this point, we already know that this assignment is field assignment within a method
-        if (TreeUtils.isConstructor(enclosingMethod) || hasUnderInitializationDeclaredReceiver(enclosingMethod)) {
+        if (initializesReceiver(enclosingMethod)) {
             ExpressionTree receiverTree = TreeUtils.getReceiverTree(variable);
             if (receiverTree == null) {
                 // Field access with implicit "this" receiver => Must be initializing object
                 return true;
             } else {
                 // Explicit receiver is "this", not other ordinary references or transitive chaining reference => Initializing object
-                return receiverTree.toString().contentEquals("this");
+                // Parentheses don't change the receiver, "(this).f" writes the field of "this" too
+                receiverTree = TreeUtils.skipParens(receiverTree);
+                return receiverTree.getKind() == Kind.IDENTIFIER
+                        && ((IdentifierTree) receiverTree).getName().contentEquals("this");
             }
         } else {
             return false;
         }
     }
 
+    /**Whether mt is a constructor or has @UnderInitialization receiver, computed once per method*/
+    private boolean initializesReceiver(MethodTree mt) {
+        Boolean result = initializingMethods.get(mt);
+        if (result == null) {
+            result = TreeUtils.isConstructor(mt) || hasUnderInitializationDeclaredReceiver(mt);
+            initializingMethods.put(mt, result);
+        }
+        return result;
+    }
+
     private boolean hasUnderInitializationDeclaredReceiver(MethodTree mt) {
         // If there is not explicit "this" parameter or if there is not annotation on "this" parameter,
         // the method is not annotated with @UnderInitialization
@@ -583,11 +742,11 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
                 mt.getReceiverParameter().getModifiers().getAnnotations().isEmpty()) {
             return false;
         }
-        Iterator<? extends AnnotationTree> iterator = mt.getReceiverParameter().getModifiers().getAnnotations().iterator();
-        while (iterator.hasNext()) {
-             if (iterator.next().getAnnotationType().toString().contains("UnderInitialization")) {
-                 return true;
-             }
+        for (AnnotationTree annotationTree : mt.getReceiverParameter().getModifiers().getAnnotations()) {
+            AnnotationMirror annotation = TreeUtils.annotationFromAnnotationTree(annotationTree);
+            if (AnnotationUtils.areSameByClass(annotation, UnderInitialization.class)) {
+                return true;
+            }
         }
         return false;
     }
@@ -656,24 +815,22 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
 
     @Override
     protected Set<? extends AnnotationMirror> getExceptionParameterLowerBoundAnnotations() {
-        Set<AnnotationMirror> result = new HashSet<>();
-        if (infer) {
-            result.add(PICOTypeUtil.createEquivalentVarAnnotOfRealQualifier(BOTTOM));
-        } else {
-            result.add(atypeFactory.getQualifierHierarchy().getBottomAnnotation(BOTTOM));
+        if (exceptionParameterLowerBound == null) {
+            exceptionParameterLowerBound = Collections.singleton(infer ?
+                    checker.getVarAnnots().of(InferenceMain.getInstance().getSlotManager(), BOTTOM) :
+                    atypeFactory.getQualifierHierarchy().getBottomAnnotation(BOTTOM));
         }
-        return result;
+        return exceptionParameterLowerBound;
     }
 
     @Override
     protected Set<? extends AnnotationMirror> getThrowUpperBoundAnnotations() {
-        Set<AnnotationMirror> result = new HashSet<>();
-        if (infer) {
-            result.add(PICOTypeUtil.createEquivalentVarAnnotOfRealQualifier(READONLY));
-        } else {
-            result.add(atypeFactory.getQualifierHierarchy().getTopAnnotation(READONLY));
+        if (throwUpperBound == null) {
+            throwUpperBound = Collections.singleton(infer ?
+                    checker.getVarAnnots().of(InferenceMain.getInstance().getSlotManager(), READONLY) :
+                    atypeFactory.getQualifierHierarchy().getTopAnnotation(READONLY));
         }
-        return result;
+        return throwUpperBound;
     }
 
     @Override
@@ -681,7 +838,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         TypeElement typeElement = TreeUtils.elementFromDeclaration(node);
         // TODO Don't process anonymous class. I'm not even sure if whether processClassTree(ClassTree) is
         // called on anonymous class tree
-        if (typeElement.toString().contains("anonymous")) {
+        if (typeElement.getNestingKind() == NestingKind.ANONYMOUS) {
             super.processClassTree(node);
             return;
         }
@@ -721,7 +878,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         List<AnnotatedDeclaredType> superBounds = PICOTypeUtil.getBoundTypesOfDirectSuperTypes(typeElement, atypeFactory);
         for (AnnotatedDeclaredType superBound : superBounds) {
             if (infer) {
-                addSameToMutableImmutableConstraints(superBound, bound);
+                addSameToMutableImmutableConstraints(superBound, bound, node);
             } else {
                 // If annotation on super bound is @ReceiverDependantMutable, then any valid bound is permitted.
                 if (superBound.hasAnnotation(RECEIVER_DEPENDANT_MUTABLE)) continue;
@@ -780,7 +937,7 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         return true;
     }
 
-    private void addSameToMutableImmutableConstraints(AnnotatedDeclaredType declarationType, AnnotatedDeclaredType useType) {
+    private void addSameToMutableImmutableConstraints(AnnotatedDeclaredType declarationType, AnnotatedDeclaredType useType, Tree tree) {
         ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
         SlotManager slotManager = InferenceMain.getInstance().getSlotManager();
         Slot declSlot = slotManager.getVariableSlot(declarationType);
@@ -790,11 +947,11 @@ public class PICOInferenceVisitor extends InferenceVisitor<PICOInferenceChecker,
         // declType == @Mutable -> useType == @Mutable
         Constraint equalityConstraintLHS = constraintManager.createEqualityConstraint(declSlot, mutable);
         Constraint equalityConstraintRHS = constraintManager.createEqualityConstraint(useSlot, mutable);
-        constraintManager.addImplicationConstraint(Arrays.asList(equalityConstraintLHS), equalityConstraintRHS);
+        addImplication(equalityConstraintLHS, equalityConstraintRHS, "addSameToMutableImmutableConstraints", tree);
         // declType == @Immutable -> useType == @Immutable
         equalityConstraintLHS = constraintManager.createEqualityConstraint(declSlot, immutable);
         equalityConstraintRHS = constraintManager.createEqualityConstraint(useSlot, immutable);
-        constraintManager.addImplicationConstraint(Arrays.asList(equalityConstraintLHS), equalityConstraintRHS);
+        addImplication(equalityConstraintLHS, equalityConstraintRHS, "addSameToMutableImmutableConstraints", tree);
     }
 
     /**
@@ -0,0 +1,204 @@
+package pico.inference;
+
+import checkers.inference.InferenceResult;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.VariableSlot;
+import com.sun.source.tree.AnnotatedTypeTree;
+import com.sun.source.tree.ArrayTypeTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedArrayType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.javacutil.TreeUtils;
+import scenelib.annotations.io.ASTRecord;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Solutions of an inference run, looked up by the trees of the current compilation instead of by
+ * slot id. {@link PICOInferenceRealTypeFactory} uses it to see the inferred qualifiers as if they
+ * were written in the source, so the result can be type checked without inserting annotations and
+ * compiling again.
+ *
+ * Only the main qualifier of a location is tracked, same as in the jaif.
+ */
+public class PICOInferredSolutions {
+
+    /**Solution of every located type tree*/
+    private final Map<Tree, AnnotationMirror> typeTrees = new IdentityHashMap<>();
+    /**Solution of implicit receivers, which have no tree of their own*/
+    private final Map<MethodTree, AnnotationMirror> receivers = new IdentityHashMap<>();
+    private final Map<TypeElement, AnnotationMirror> classBounds = new HashMap<>();
+    /**Compilation units that have at least one solution, in the order they were found*/
+    private final Set<CompilationUnitTree> units = new LinkedHashSet<>();
+
+    public PICOInferredSolutions(Collection<VariableSlot> slots, InferenceResult result, ProcessingEnvironment processingEnv) {
+        Map<CompilationUnitTree, Map<ASTRecord, Tree>> indices = new IdentityHashMap<>();
+        for (VariableSlot slot : slots) {
+            AnnotationLocation location = slot.getLocation();
+            if (location == null || location == AnnotationLocation.MISSING_LOCATION || !slot.isInsertable()) {
+                continue;
+            }
+            AnnotationMirror solution = result.getSolutionForVariable(slot.getId());
+            if (solution == null) {
+                continue;
+            }
+            if (location instanceof AstPathLocation) {
+                ASTRecord record = ((AstPathLocation) location).getAstRecord();
+                Tree tree = indices.computeIfAbsent(record.ast, PICOSourceAnnotationWriter::invertIndex).get(record);
+                if (tree == null) {
+                    continue;
+                }
+                units.add(record.ast);
+                if (tree.getKind() == Tree.Kind.METHOD) {
+                    // See PICOSourceAnnotationWriter#invertIndex: only implicit receivers resolve to the method itself
+                    receivers.put((MethodTree) tree, solution);
+                } else {
+                    typeTrees.put(tree, solution);
+                }
+            } else if (location instanceof ClassDeclLocation) {
+                TypeElement element = processingEnv.getElementUtils().getTypeElement(
+                        ((ClassDeclLocation) location).getFullyQualifiedClassName());
+                TreePath path = element == null ? null : Trees.instance(processingEnv).getPath(element);
+                if (path != null) {
+                    classBounds.put(element, solution);
+                    units.add(path.getCompilationUnit());
+                }
+            }
+        }
+    }
+
+    public Set<CompilationUnitTree> getCompilationUnits() {
+        return units;
+    }
+
+    /**Applies solutions of the declaration of elt(if it has one in this compilation) to its type*/
+    public void applyToDeclaration(Element elt, Tree declaration, AnnotatedTypeMirror type) {
+        if (declaration == null) {
+            if (elt instanceof TypeElement && classBounds.containsKey(elt)) {
+                type.replaceAnnotation(classBounds.get(elt));
+            }
+            return;
+        }
+        switch (declaration.getKind()) {
+            case VARIABLE:
+                applyToTypeTree(((VariableTree) declaration).getType(), type);
+                break;
+            case METHOD:
+                if (type instanceof AnnotatedExecutableType) {
+                    applyToMethod((MethodTree) declaration, (AnnotatedExecutableType) type);
+                }
+                break;
+            default:
+                if (elt instanceof TypeElement && classBounds.containsKey(elt)) {
+                    type.replaceAnnotation(classBounds.get(elt));
+                }
+        }
+    }
+
+    /**Applies solutions of the type trees that tree itself contains, e.g. the class name of a new class tree*/
+    public void applyToTree(Tree tree, AnnotatedTypeMirror type) {
+        switch (tree.getKind()) {
+            case VARIABLE:
+                applyToTypeTree(((VariableTree) tree).getType(), type);
+                break;
+            case NEW_CLASS:
+                applyToTypeTree(((NewClassTree) tree).getIdentifier(), type);
+                break;
+            case TYPE_CAST:
+                applyToTypeTree(((TypeCastTree) tree).getType(), type);
+                break;
+            case METHOD:
+                if (type instanceof AnnotatedExecutableType) {
+                    applyToMethod((MethodTree) tree, (AnnotatedExecutableType) type);
+                }
+                break;
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                TypeElement element = TreeUtils.elementFromDeclaration((ClassTree) tree);
+                if (classBounds.containsKey(element)) {
+                    type.replaceAnnotation(classBounds.get(element));
+                }
+                break;
+            default:
+                applyToTypeTree(tree, type);
+        }
+    }
+
+    private void applyToMethod(MethodTree method, AnnotatedExecutableType type) {
+        applyToTypeTree(method.getReturnType(), type.getReturnType());
+        if (type.getReceiverType() != null) {
+            if (method.getReceiverParameter() != null) {
+                applyToTypeTree(method.getReceiverParameter().getType(), type.getReceiverType());
+            } else if (receivers.containsKey(method)) {
+                type.getReceiverType().replaceAnnotation(receivers.get(method));
+            }
+        }
+        List<? extends VariableTree> parameters = method.getParameters();
+        List<AnnotatedTypeMirror> parameterTypes = type.getParameterTypes();
+        for (int i = 0; i < parameters.size() && i < parameterTypes.size(); i++) {
+            applyToTypeTree(parameters.get(i).getType(), parameterTypes.get(i));
+        }
+    }
+
+    /**Walks type tree and type side by side. Parts of the type that don't have a tree are left untouched*/
+    private void applyToTypeTree(Tree typeTree, AnnotatedTypeMirror type) {
+        while (typeTree != null && type != null) {
+            AnnotationMirror solution = typeTrees.get(typeTree);
+            if (solution != null) {
+                type.replaceAnnotation(solution);
+            }
+            switch (typeTree.getKind()) {
+                case ANNOTATED_TYPE:
+                    typeTree = ((AnnotatedTypeTree) typeTree).getUnderlyingType();
+                    break;
+                case ARRAY_TYPE:
+                    if (!(type instanceof AnnotatedArrayType)) {
+                        return;
+                    }
+                    typeTree = ((ArrayTypeTree) typeTree).getType();
+                    type = ((AnnotatedArrayType) type).getComponentType();
+                    break;
+                case PARAMETERIZED_TYPE:
+                    if (!(type instanceof AnnotatedDeclaredType)) {
+                        return;
+                    }
+                    ParameterizedTypeTree parameterized = (ParameterizedTypeTree) typeTree;
+                    List<? extends Tree> arguments = parameterized.getTypeArguments();
+                    List<AnnotatedTypeMirror> typeArguments = ((AnnotatedDeclaredType) type).getTypeArguments();
+                    for (int i = 0; i < arguments.size() && i < typeArguments.size(); i++) {
+                        applyToTypeTree(arguments.get(i), typeArguments.get(i));
+                    }
+                    // Main qualifier may be recorded on the raw part, e.g. List in List<String>
+                    typeTree = parameterized.getType();
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+}
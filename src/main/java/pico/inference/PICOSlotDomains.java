@@ -0,0 +1,77 @@
+package pico.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.BugInCF;
+
+import pico.typecheck.PICOAnnotationMirrorHolder;
+
+/**
+ * Qualifiers each variable slot must not take, as a bit mask per slot id. Restrictions that only
+ * concern one slot, e.g. "not @Bottom" for every slot and "not @Readonly" for class bounds or
+ * constructor returns, are recorded here instead of as InequalityConstraints against a constant.
+ * PICOFormatTranslator then excludes the forbidden values when it encodes the well-formedness of a slot.
+ */
+public class PICOSlotDomains {
+
+    private int[] forbidden = new int[1024];
+    /**Looked up lazily, the checker owning this is created before the qualifiers are*/
+    private AnnotationMirror[] qualifiers;
+
+    /**Qualifiers a VariableSlot can take in PICOInfer. Index in this array is the bit in a mask*/
+    public static AnnotationMirror[] qualifiers() {
+        return PICOAnnotationMirrorHolder.inferableQualifiers();
+    }
+
+    private int bit(AnnotationMirror qualifier) {
+        if (qualifiers == null) {
+            qualifiers = qualifiers();
+        }
+        for (int i = 0; i < qualifiers.length; i++) {
+            if (AnnotationUtils.areSame(qualifier, qualifiers[i])) {
+                return 1 << i;
+            }
+        }
+        throw new BugInCF("Unknown qualifier for slot domains: " + qualifier);
+    }
+
+    public void forbid(int slotId, AnnotationMirror qualifier) {
+        if (slotId >= forbidden.length) {
+            forbidden = Arrays.copyOf(forbidden, Math.max(forbidden.length * 2, slotId + 1));
+        }
+        forbidden[slotId] |= bit(qualifier);
+    }
+
+    public boolean isAllowed(int slotId, AnnotationMirror qualifier) {
+        return slotId >= forbidden.length || (forbidden[slotId] & bit(qualifier)) == 0;
+    }
+
+    /**@return forbidden qualifiers of slot id, empty if its domain isn't restricted*/
+    public List<AnnotationMirror> getForbidden(int slotId) {
+        List<AnnotationMirror> result = new ArrayList<>();
+        if (slotId < forbidden.length && forbidden[slotId] != 0) {
+            AnnotationMirror[] qualifiers = qualifiers();
+            for (int i = 0; i < qualifiers.length; i++) {
+                if ((forbidden[slotId] & (1 << i)) != 0) {
+                    result.add(qualifiers[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**@return one past the largest slot id that may be restricted*/
+    public int size() {
+        return forbidden.length;
+    }
+
+    /**Forgets all restrictions, e.g. before the ones of a checkpoint are loaded*/
+    public void clear() {
+        Arrays.fill(forbidden, 0);
+    }
+}
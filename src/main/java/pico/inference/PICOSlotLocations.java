@@ -0,0 +1,237 @@
+package pico.inference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTRecord;
+
+/**
+ * AST path locations of the VariableSlots created by PICOVariableAnnotator, kept in one int arena instead of
+ * an AstPathLocation per slot(each with its ASTRecord, ASTPath and one ASTEntry per step of the path).
+ *
+ * A location is encoded as compilation unit id, class, method and variable name ids, number of steps, and per
+ * step (tree kind ordinal << 16 | child selector id) followed by the argument(-1 if none). Compilation units,
+ * names and child selectors are kept once in tables. Equal encodings are found through an open addressing
+ * table of slot ids, so a location seen twice gets the same slot, just like the location cache of the slot
+ * manager. Slots hold MISSING_LOCATION until {@link #restore(SlotManager)} decodes their locations, which is
+ * only needed once constraints are solved: for the jaif, inserting into sources and the checkpoint. Only
+ * PICOSolverEngine restores them, so locations are only kept here when it is the solver.
+ */
+public class PICOSlotLocations {
+
+    private static final Tree.Kind[] KINDS = Tree.Kind.values();
+    /**Unit, class name, method name, variable name, number of steps*/
+    private static final int HEADER = 5;
+    private static final int NONE = -1;
+
+    private int[] arena = new int[1 << 14];
+    private int size = 0;
+    /**Offset into arena plus one per slot id, 0 if the slot's location isn't stored here*/
+    private int[] slotRecords = new int[1024];
+    /**Slot id plus one per bucket, 0 if the bucket is empty. Length is a power of two*/
+    private int[] buckets = new int[1024];
+    private int stored = 0;
+    private int shared = 0;
+    /**Encoding of the location being looked up*/
+    private int[] scratch = new int[64];
+
+    private final List<CompilationUnitTree> units = new ArrayList<>();
+    private final Map<CompilationUnitTree, Integer> unitIds = new IdentityHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> selectors = new ArrayList<>();
+    private final Map<String, Integer> selectorIds = new HashMap<>();
+
+    /**@return id of the slot whose location equals location, -1 if there is none*/
+    public int lookup(AstPathLocation location) {
+        int length = encode(location.getAstRecord());
+        int mask = buckets.length - 1;
+        for (int bucket = hash(scratch, 0, length) & mask; buckets[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slotId = buckets[bucket] - 1;
+            if (matches(slotRecords[slotId] - 1, length)) {
+                shared++;
+                return slotId;
+            }
+        }
+        return NONE;
+    }
+
+    /**Stores location for slot id, which must have no location stored yet*/
+    public void store(int slotId, AstPathLocation location) {
+        int length = encode(location.getAstRecord());
+        if (size + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, size + length));
+        }
+        System.arraycopy(scratch, 0, arena, size, length);
+        if (slotId >= slotRecords.length) {
+            slotRecords = Arrays.copyOf(slotRecords, Math.max(slotRecords.length * 2, slotId + 1));
+        }
+        // Grow before the new slot has a record, rehash would insert it otherwise
+        if (++stored * 2 > buckets.length) {
+            rehash(buckets.length * 2);
+        }
+        slotRecords[slotId] = size + 1;
+        size += length;
+        insert(slotId);
+    }
+
+    /**@return location of slot, decoded if it's stored here*/
+    public AnnotationLocation locationOf(Slot slot) {
+        AnnotationLocation location = decode(slot.getId());
+        if (location != null || !(slot instanceof VariableSlot)) {
+            return location;
+        }
+        return ((VariableSlot) slot).getLocation();
+    }
+
+    /**
+     * Sets the decoded location on every slot stored here and frees the arena. Afterwards slots answer
+     * getLocation() themselves.
+     */
+    public void restore(SlotManager slotManager) {
+        for (int slotId = 0; slotId < slotRecords.length; slotId++) {
+            if (slotRecords[slotId] != 0) {
+                ((VariableSlot) slotManager.getSlot(slotId)).setLocation(decode(slotId));
+            }
+        }
+        arena = new int[0];
+        size = 0;
+        slotRecords = new int[0];
+        buckets = new int[1];
+        stored = 0;
+        units.clear();
+        unitIds.clear();
+        names.clear();
+        nameIds.clear();
+        selectors.clear();
+        selectorIds.clear();
+    }
+
+    /**Number of locations stored, shared by more than one lookup, and bytes of the arena*/
+    public int getStored() {
+        return stored;
+    }
+
+    public int getShared() {
+        return shared;
+    }
+
+    public long getArenaBytes() {
+        return (long) arena.length * Integer.BYTES;
+    }
+
+    private AnnotationLocation decode(int slotId) {
+        if (slotId >= slotRecords.length || slotRecords[slotId] == 0) {
+            return null;
+        }
+        int offset = slotRecords[slotId] - 1;
+        ASTRecord record = new ASTRecord(units.get(arena[offset]), name(arena[offset + 1]), name(arena[offset + 2]),
+                name(arena[offset + 3]), ASTPath.empty());
+        int steps = arena[offset + 4];
+        for (int i = 0; i < steps; i++) {
+            int step = arena[offset + HEADER + 2 * i];
+            int argument = arena[offset + HEADER + 2 * i + 1];
+            int selector = step & 0xFFFF;
+            record = record.extend(KINDS[step >>> 16], selector == 0 ? null : selectors.get(selector - 1), argument);
+        }
+        return new AstPathLocation(record);
+    }
+
+    /**@return length of the encoding of record in scratch*/
+    private int encode(ASTRecord record) {
+        ASTPath path = record.astPath;
+        int length = HEADER + 2 * path.size();
+        if (length > scratch.length) {
+            scratch = new int[Math.max(scratch.length * 2, length)];
+        }
+        Integer unit = unitIds.get(record.ast);
+        if (unit == null) {
+            unit = units.size();
+            units.add(record.ast);
+            unitIds.put(record.ast, unit);
+        }
+        scratch[0] = unit;
+        scratch[1] = intern(record.className, names, nameIds);
+        scratch[2] = intern(record.methodName, names, nameIds);
+        scratch[3] = intern(record.varName, names, nameIds);
+        scratch[4] = path.size();
+        for (int i = 0; i < path.size(); i++) {
+            ASTPath.ASTEntry entry = path.get(i);
+            int selector = intern(entry.getChildSelector(), selectors, selectorIds) + 1;
+            assert selector <= 0xFFFF;
+            scratch[HEADER + 2 * i] = (entry.getTreeKind().ordinal() << 16) | selector;
+            scratch[HEADER + 2 * i + 1] = entry.hasArgument() ? entry.getArgument() : NONE;
+        }
+        return length;
+    }
+
+    private boolean matches(int offset, int length) {
+        if (arena[offset + 4] != scratch[4]) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != scratch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        buckets = new int[capacity];
+        for (int slotId = 0; slotId < slotRecords.length; slotId++) {
+            if (slotRecords[slotId] != 0) {
+                insert(slotId);
+            }
+        }
+    }
+
+    private void insert(int slotId) {
+        int offset = slotRecords[slotId] - 1;
+        int mask = buckets.length - 1;
+        int bucket = hash(arena, offset, HEADER + 2 * arena[offset + 4]) & mask;
+        while (buckets[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        buckets[bucket] = slotId + 1;
+    }
+
+    private static int hash(int[] values, int offset, int length) {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + values[i];
+        }
+        // Spread the low bits, the table is indexed by them
+        return h ^ (h >>> 16);
+    }
+
+    private String name(int id) {
+        return id == NONE ? null : names.get(id);
+    }
+
+    private static int intern(String name, List<String> table, Map<String, Integer> ids) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = table.size();
+            table.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,409 @@
+package pico.inference;
+
+import checkers.inference.InferenceResult;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.VariableSlot;
+import com.sun.source.tree.ArrayTypeTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.TreeUtils;
+import scenelib.annotations.io.ASTIndex;
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTRecord;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.TypeElement;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Writes inferred qualifiers directly into copies of the source files, replacing the round trip of
+ * writing a jaif and re-parsing every source with annotation-file-utilities(AFU).
+ *
+ * Text edits are computed sequentially from the javac trees of the current compilation, because
+ * ASTIndex isn't thread-safe. Applying the edits and writing the files happens in parallel. The
+ * insertion mimics AFU's defaults: simple annotation names with imports added after the last
+ * existing import, qualified types annotated before their simple name and array types annotated
+ * before the brackets.
+ *
+ * Locations AFU supports but this writer doesn't(e.g. new array dimensions or missing receivers of
+ * generic classes) are not guessed at: the whole compilation unit is left to AFU instead and listed
+ * in the fallback file returned by {@link #write(Collection, Collection, InferenceResult)}. Units
+ * without solutions are copied unchanged, as AFU writes every source it's given.
+ */
+public class PICOSourceAnnotationWriter {
+
+    public static final String FALLBACK_FILE = "pico-insertion-fallback.txt";
+
+    private final Path outputDir;
+    private final ProcessingEnvironment processingEnv;
+
+    public PICOSourceAnnotationWriter(Path outputDir, ProcessingEnvironment processingEnv) {
+        this.outputDir = outputDir;
+        this.processingEnv = processingEnv;
+    }
+
+    /**A pending insertion of text at an offset of the original source*/
+    private static class Edit {
+        final int position;
+        final String text;
+
+        Edit(int position, String text) {
+            this.position = position;
+            this.text = text;
+        }
+    }
+
+    /**Edits of one compilation unit, plus the qualified names of annotations that need to be imported*/
+    private static class UnitEdits {
+        final CompilationUnitTree unit;
+        final List<Edit> edits = new ArrayList<>();
+        final TreeSet<String> imports = new TreeSet<>();
+        boolean needsFallback = false;
+
+        UnitEdits(CompilationUnitTree unit) {
+            this.unit = unit;
+        }
+    }
+
+    /**
+     * Inserts the solutions of all insertable slots and writes the annotated sources.
+     *
+     * @param compilationUnits every unit of the run, also the ones without solutions
+     * @return source files that couldn't be handled and must still go through AFU
+     */
+    public List<String> write(Collection<CompilationUnitTree> compilationUnits, Collection<VariableSlot> slots,
+                              InferenceResult result) {
+        Map<AnnotationLocation, AnnotationMirror> solutions = new LinkedHashMap<>();
+        for (VariableSlot slot : slots) {
+            AnnotationLocation location = slot.getLocation();
+            if (location == null || location == AnnotationLocation.MISSING_LOCATION || !slot.isInsertable()) {
+                continue;
+            }
+            AnnotationMirror solution = result.getSolutionForVariable(slot.getId());
+            if (solution != null) {
+                // Same as jaif: one annotation per location
+                solutions.put(location, solution);
+            }
+        }
+
+        Map<CompilationUnitTree, UnitEdits> units = new IdentityHashMap<>();
+        for (CompilationUnitTree unit : compilationUnits) {
+            units.put(unit, new UnitEdits(unit));
+        }
+        Map<CompilationUnitTree, Map<ASTRecord, Tree>> indices = new IdentityHashMap<>();
+        List<ClassDeclLocation> classDecls = new ArrayList<>();
+        for (Map.Entry<AnnotationLocation, AnnotationMirror> e : solutions.entrySet()) {
+            if (e.getKey() instanceof AstPathLocation) {
+                ASTRecord record = ((AstPathLocation) e.getKey()).getAstRecord();
+                UnitEdits unitEdits = units.computeIfAbsent(record.ast, UnitEdits::new);
+                Map<ASTRecord, Tree> index = indices.computeIfAbsent(record.ast, PICOSourceAnnotationWriter::invertIndex);
+                addEdit(unitEdits, index.get(record), record, e.getValue());
+            } else if (e.getKey() instanceof ClassDeclLocation) {
+                classDecls.add((ClassDeclLocation) e.getKey());
+            }
+        }
+        for (ClassDeclLocation classDecl : classDecls) {
+            addClassDeclEdit(units, classDecl, solutions.get(classDecl));
+        }
+
+        List<String> fallback = new ArrayList<>();
+        List<UnitEdits> toWrite = new ArrayList<>();
+        for (UnitEdits unitEdits : units.values()) {
+            if (unitEdits.needsFallback) {
+                fallback.add(unitEdits.unit.getSourceFile().toUri().getPath());
+            } else {
+                toWrite.add(unitEdits);
+            }
+        }
+        toWrite.parallelStream().forEach(this::writeUnit);
+        return fallback;
+    }
+
+    /**ASTIndex maps trees to records. Solutions come with records, so look up the other way round*/
+    static Map<ASTRecord, Tree> invertIndex(CompilationUnitTree unit) {
+        Map<ASTRecord, Tree> inverted = new HashMap<>();
+        for (Map.Entry<Tree, ASTRecord> e : ASTIndex.indexOf(unit).entrySet()) {
+            inverted.put(e.getValue(), e.getKey());
+            if (e.getKey().getKind() == Tree.Kind.METHOD) {
+                // Implicit receivers have no tree. VariableAnnotator records them as parameter -1 of the method
+                inverted.putIfAbsent(e.getValue().extend(Tree.Kind.METHOD, ASTPath.PARAMETER, -1), e.getKey());
+            }
+        }
+        return inverted;
+    }
+
+    private void addEdit(UnitEdits unitEdits, Tree tree, ASTRecord record, AnnotationMirror solution) {
+        if (tree == null) {
+            unitEdits.needsFallback = true;
+            return;
+        }
+        String annotation = abbreviate(unitEdits, solution);
+        switch (tree.getKind()) {
+            case IDENTIFIER:
+            case PRIMITIVE_TYPE:
+                unitEdits.edits.add(new Edit(TreeInfo.getStartPos((JCTree) tree), annotation + " "));
+                break;
+            case MEMBER_SELECT:
+                // java.util.@A List: annotation goes right before the simple name
+                unitEdits.edits.add(new Edit(afterDot(unitEdits.unit, (MemberSelectTree) tree), annotation + " "));
+                break;
+            case PARAMETERIZED_TYPE:
+                addEdit(unitEdits, ((ParameterizedTypeTree) tree).getType(), record, solution);
+                break;
+            case ARRAY_TYPE:
+                // String @A []: annotation on the array itself goes before its brackets
+                addArrayEdit(unitEdits, (ArrayTypeTree) tree, annotation);
+                break;
+            case METHOD:
+                addReceiverEdit(unitEdits, (MethodTree) tree, annotation);
+                break;
+            default:
+                unitEdits.needsFallback = true;
+        }
+    }
+
+    private void addArrayEdit(UnitEdits unitEdits, ArrayTypeTree tree, String annotation) {
+        int bracket = ((JCTree) tree).pos;
+        CharSequence source = sourceOf(unitEdits.unit);
+        if (bracket <= 0 || bracket >= source.length() || source.charAt(bracket) != '[') {
+            unitEdits.needsFallback = true;
+            return;
+        }
+        String separator = Character.isWhitespace(source.charAt(bracket - 1)) ? "" : " ";
+        unitEdits.edits.add(new Edit(bracket, separator + annotation + " "));
+    }
+
+    private void addReceiverEdit(UnitEdits unitEdits, MethodTree method, String annotation) {
+        if (method.getReceiverParameter() != null) {
+            // Explicit receiver has its own tree in the index; reaching here means it's not a plain type
+            unitEdits.needsFallback = true;
+            return;
+        }
+        ClassTree enclosing = enclosingClassOf(unitEdits.unit, method);
+        if (enclosing == null || !enclosing.getTypeParameters().isEmpty()
+                || enclosing.getSimpleName().length() == 0) {
+            // Receiver type of generic or anonymous classes needs AFU's type printing
+            unitEdits.needsFallback = true;
+            return;
+        }
+        CharSequence source = sourceOf(unitEdits.unit);
+        int paren = indexOf(source, '(', ((JCTree) method).pos);
+        if (paren < 0) {
+            unitEdits.needsFallback = true;
+            return;
+        }
+        String receiver = annotation + " " + enclosing.getSimpleName() + " this";
+        if (!method.getParameters().isEmpty()) {
+            receiver += ", ";
+        }
+        unitEdits.edits.add(new Edit(paren + 1, receiver));
+    }
+
+    private void addClassDeclEdit(Map<CompilationUnitTree, UnitEdits> units, ClassDeclLocation location, AnnotationMirror solution) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(location.getFullyQualifiedClassName());
+        TreePath path = element == null ? null : Trees.instance(processingEnv).getPath(element);
+        if (path == null) {
+            // Class declaration has no source in this compilation: nothing to annotate
+            return;
+        }
+        UnitEdits unitEdits = units.computeIfAbsent(path.getCompilationUnit(), UnitEdits::new);
+        ClassTree classTree = findClass(unitEdits.unit, location.getFullyQualifiedClassName());
+        if (classTree == null) {
+            unitEdits.needsFallback = true;
+            return;
+        }
+        String annotation = abbreviate(unitEdits, solution);
+        unitEdits.edits.add(new Edit(TreeInfo.getStartPos((JCTree) classTree), annotation + " "));
+    }
+
+    private static ClassTree findClass(CompilationUnitTree unit, String qualifiedName) {
+        for (Tree typeDecl : unit.getTypeDecls()) {
+            if (TreeUtils.isClassTree(typeDecl)) {
+                ClassTree found = findClass((ClassTree) typeDecl, qualifiedName);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static ClassTree findClass(ClassTree classTree, String qualifiedName) {
+        TypeElement element = TreeUtils.elementFromDeclaration(classTree);
+        if (element != null && element.getQualifiedName().contentEquals(qualifiedName)) {
+            return classTree;
+        }
+        for (Tree member : classTree.getMembers()) {
+            if (TreeUtils.isClassTree(member)) {
+                ClassTree found = findClass((ClassTree) member, qualifiedName);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static ClassTree enclosingClassOf(CompilationUnitTree unit, MethodTree method) {
+        for (Tree typeDecl : unit.getTypeDecls()) {
+            if (TreeUtils.isClassTree(typeDecl)) {
+                ClassTree found = enclosingClassOf((ClassTree) typeDecl, method);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static ClassTree enclosingClassOf(ClassTree classTree, MethodTree method) {
+        for (Tree member : classTree.getMembers()) {
+            if (member == method) {
+                return classTree;
+            }
+            if (TreeUtils.isClassTree(member)) {
+                ClassTree found = enclosingClassOf((ClassTree) member, method);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**Simple name of the annotation; its qualified name is remembered to be imported if not imported yet*/
+    private static String abbreviate(UnitEdits unitEdits, AnnotationMirror solution) {
+        String qualifiedName = AnnotationUtils.annotationName(solution);
+        int lastDot = qualifiedName.lastIndexOf('.');
+        if (lastDot < 0) {
+            return "@" + qualifiedName;
+        }
+        String packageName = qualifiedName.substring(0, lastDot);
+        if (!packageName.equals("java.lang") && !isImported(unitEdits.unit, qualifiedName, packageName)) {
+            unitEdits.imports.add(qualifiedName);
+        }
+        return "@" + qualifiedName.substring(lastDot + 1);
+    }
+
+    private static boolean isImported(CompilationUnitTree unit, String qualifiedName, String packageName) {
+        if (unit.getPackageName() != null && unit.getPackageName().toString().equals(packageName)) {
+            return true;
+        }
+        for (ImportTree importTree : unit.getImports()) {
+            String imported = importTree.getQualifiedIdentifier().toString();
+            if (!importTree.isStatic() && (imported.equals(qualifiedName) || imported.equals(packageName + ".*"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int afterDot(CompilationUnitTree unit, MemberSelectTree tree) {
+        // JCFieldAccess is positioned at its dot
+        CharSequence source = sourceOf(unit);
+        int position = ((JCTree) tree).pos + 1;
+        while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int indexOf(CharSequence source, char c, int from) {
+        for (int i = Math.max(from, 0); i < source.length(); i++) {
+            if (source.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static CharSequence sourceOf(CompilationUnitTree unit) {
+        try {
+            return unit.getSourceFile().getCharContent(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**Insertion point for imports: after the last import, or after the package declaration, or at the top*/
+    private static int importPosition(CompilationUnitTree unit, CharSequence source) {
+        int anchor = -1;
+        if (!unit.getImports().isEmpty()) {
+            anchor = indexOf(source, ';', TreeInfo.getStartPos((JCTree) unit.getImports().get(unit.getImports().size() - 1)));
+        } else if (unit.getPackageName() != null) {
+            anchor = indexOf(source, ';', TreeInfo.getStartPos((JCTree) unit.getPackageName()));
+        }
+        if (anchor < 0) {
+            return 0;
+        }
+        int lineEnd = indexOf(source, '\n', anchor);
+        return lineEnd < 0 ? source.length() : lineEnd + 1;
+    }
+
+    private void writeUnit(UnitEdits unitEdits) {
+        CharSequence source = sourceOf(unitEdits.unit);
+        List<Edit> edits = new ArrayList<>(unitEdits.edits);
+        if (!unitEdits.imports.isEmpty()) {
+            StringBuilder imports = new StringBuilder();
+            for (String imported : unitEdits.imports) {
+                imports.append("import ").append(imported).append(";\n");
+            }
+            edits.add(new Edit(importPosition(unitEdits.unit, source), imports.toString()));
+        }
+        // Stable sort keeps edits at the same position in the order they were computed
+        edits.sort((a, b) -> Integer.compare(a.position, b.position));
+
+        Path target = targetPath(unitEdits.unit);
+        try {
+            Files.createDirectories(target.getParent());
+            try (Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                int copied = 0;
+                for (Edit edit : edits) {
+                    out.append(source, copied, edit.position);
+                    out.write(edit.text);
+                    copied = edit.position;
+                }
+                out.append(source, copied, source.length());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write annotated source " + target, e);
+        }
+    }
+
+    /**Same layout as AFU: package directories under the output directory*/
+    private Path targetPath(CompilationUnitTree unit) {
+        Path dir = outputDir;
+        if (unit.getPackageName() != null) {
+            dir = dir.resolve(unit.getPackageName().toString().replace('.', '/'));
+        }
+        String fileName = Paths.get(unit.getSourceFile().toUri()).getFileName().toString();
+        return dir.resolve(fileName);
+    }
+}
@@ -0,0 +1,35 @@
+package pico.inference;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import checkers.inference.SlotManager;
+import checkers.inference.model.ConstantSlot;
+
+/**
+ * VarAnnot of the ConstantSlot of each real qualifier, created once per inference run instead of on every
+ * catch clause, throw statement and raw type use. Like the slot domains, there is one per
+ * PICOInferenceChecker, which has one SlotManager. Qualifiers with element values aren't identified by their
+ * name alone, so they get a new VarAnnot every time.
+ */
+public class PICOVarAnnots {
+
+    private final Map<String, AnnotationMirror> varAnnots = new HashMap<>();
+
+    /**@return VarAnnot equivalent to am. The same instance is returned for the same qualifier, so don't modify it*/
+    public AnnotationMirror of(SlotManager slotManager, AnnotationMirror am) {
+        if (!am.getElementValues().isEmpty()) {
+            return create(slotManager, am);
+        }
+        return varAnnots.computeIfAbsent(AnnotationUtils.annotationName(am), name -> create(slotManager, am));
+    }
+
+    private static AnnotationMirror create(SlotManager slotManager, AnnotationMirror am) {
+        ConstantSlot constantSlot = slotManager.createConstantSlot(am);
+        return slotManager.getAnnotation(constantSlot);
+    }
+}
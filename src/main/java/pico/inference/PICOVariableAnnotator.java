@@ -5,9 +5,13 @@ import static pico.typecheck.PICOAnnotationMirrorHolder.IMMUTABLE;
 import static pico.typecheck.PICOAnnotationMirrorHolder.MUTABLE;
 import static pico.typecheck.PICOAnnotationMirrorHolder.READONLY;
 
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeKind;
@@ -28,18 +32,45 @@ import checkers.inference.InferrableChecker;
 import checkers.inference.SlotManager;
 import checkers.inference.VariableAnnotator;
 import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
 import checkers.inference.model.ConstraintManager;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.model.tree.ArtificialExtendsBoundTree;
+import pico.inference.solver.PICOSolverEngine;
+import pico.typecheck.PICOSummary;
 import pico.typecheck.PICOTypeUtil;
 
 public class PICOVariableAnnotator extends VariableAnnotator {
 
     private boolean generateBottomInequality = true;
+    /**Where "not @Bottom" of every created VariableSlot is recorded*/
+    private final PICOSlotDomains domains;
+    private final PICOConstraintProvenance provenance;
+    /**Where AST path locations of created VariableSlots are kept instead of the slots themselves*/
+    private final PICOSlotLocations locations;
+    /**Only PICOSolverEngine restores locations from PICOSlotLocations, e.g. the DebugSolver doesn't*/
+    private final boolean compactLocations = PICOSolverEngine.isConfigured();
+    /**Summaries of other modules, used for bounds of bytecode classes that have no stub*/
+    private final List<PICOSummary> summaries;
+    /**VarAnnots equivalent to @Mutable and @Bottom, applied to the wildcard bounds of every raw type use*/
+    private final List<AnnotationMirror> mutableVarAnnot;
+    private final List<AnnotationMirror> bottomVarAnnot;
+    /**Number of type parameters of each class that has raw uses*/
+    private final Map<Element, Integer> declarationTypeArgCounts = new HashMap<>();
+    /**Tree standing for the extends bound of each unbounded wildcard*/
+    private final Map<WildcardTree, ArtificialExtendsBoundTree> artificialExtendsBounds = new IdentityHashMap<>();
 
     public PICOVariableAnnotator(InferenceAnnotatedTypeFactory typeFactory, AnnotatedTypeFactory realTypeFactory,
                                  InferrableChecker realChecker, SlotManager slotManager, ConstraintManager constraintManager) {
         super(typeFactory, realTypeFactory, realChecker, slotManager, constraintManager);
+        domains = ((PICOInferenceChecker) realChecker).getSlotDomains();
+        provenance = ((PICOInferenceChecker) realChecker).getProvenance();
+        locations = ((PICOInferenceChecker) realChecker).getSlotLocations();
+        summaries = realTypeFactory instanceof PICOInferenceRealTypeFactory ?
+                ((PICOInferenceRealTypeFactory) realTypeFactory).getSummaries() : Collections.emptyList();
+        PICOVarAnnots varAnnots = ((PICOInferenceChecker) realChecker).getVarAnnots();
+        mutableVarAnnot = Collections.singletonList(varAnnots.of(slotManager, MUTABLE));
+        bottomVarAnnot = Collections.singletonList(varAnnots.of(slotManager, BOTTOM));
     }
 
     @Override
@@ -58,8 +89,9 @@ public class PICOVariableAnnotator extends VariableAnnotator {
     @Override
     protected void handleClassDeclarationBound(AnnotatedDeclaredType classType) {
         TypeElement classElement = (TypeElement) classType.getUnderlyingType().asElement();
-        if (classDeclAnnos.containsKey(classElement)) {
-            classType.addAnnotation(slotManager.getAnnotation(classDeclAnnos.get(classElement)));
+        VariableSlot existing = classDeclAnnos.get(classElement);
+        if (existing != null) {
+            classType.addAnnotation(slotManager.getAnnotation(existing));
             classType.addAnnotation(READONLY);
             return;
         }
@@ -76,7 +108,10 @@ public class PICOVariableAnnotator extends VariableAnnotator {
         }
 
         Tree classTree = inferenceTypeFactory.declarationFromElement(classElement);
-        if (classTree != null) {
+        // Generated sources have class bounds that are constants like the ones of bytecode classes
+        boolean isTrusted = inferenceTypeFactory instanceof PICOInferenceAnnotatedTypeFactory
+                && ((PICOInferenceAnnotatedTypeFactory) inferenceTypeFactory).isTrusted(classElement);
+        if (classTree != null && !isTrusted) {
             // Have source tree
             if (bound.isAnnotatedInHierarchy(READONLY)) {
                 // Have bound annotation -> convert to equivalent ConstantSlot
@@ -86,13 +121,23 @@ public class PICOVariableAnnotator extends VariableAnnotator {
                 boundSlot = createVariable(treeToLocation(classTree));
             }
         } else {
-            // No source tree: bytecode classes
+            // No source tree: bytecode classes, or trusted generated ones
             if (bound.isAnnotatedInHierarchy(READONLY)) {
                 // Have bound annotation in stub file
                 boundSlot = createConstant(bound.getAnnotationInHierarchy(READONLY));
             } else {
                 // No stub file
-                if (PICOTypeUtil.isImplicitlyImmutableType(classType)) {
+                AnnotationMirror summarized = null;
+                for (PICOSummary summary : summaries) {
+                    summarized = summary.getClassBound(classElement);
+                    if (summarized != null) {
+                        break;
+                    }
+                }
+                if (summarized != null) {
+                    // Bound inferred or checked in the module the class comes from
+                    boundSlot = createConstant(summarized);
+                } else if (PICOTypeUtil.isImplicitlyImmutableType(classType)) {
                     // Implicitly immutable
                     boundSlot = createConstant(IMMUTABLE);
                 } else {
@@ -120,15 +165,33 @@ public class PICOVariableAnnotator extends VariableAnnotator {
         return super.addPrimaryVariable(atm, tree);
     }
 
-    // Generates inequality constraint between every strict VariableSlot and @Bottom so that @Bottom is not inserted
-    // back to source code, but can be within the internal state because of dataflow refinement
+    // Forbids @Bottom for every strict VariableSlot so that @Bottom is not inserted back to source code, but can be
+    // within the internal state because of dataflow refinement. It's a restriction of the slot's domain rather than
+    // an inequality constraint, see PICOSlotDomains
+    //
+    // When PICOSolverEngine solves, AST path locations go to PICOSlotLocations, and the slot is created with
+    // MISSING_LOCATION, which the slot manager doesn't cache. The location passed in is garbage right after this call
+    // instead of being kept by the slot and the slot manager until the jaif is written. Other solvers, which don't
+    // restore locations, get slots with their locations as usual.
     @Override
     protected VariableSlot createVariable(AnnotationLocation location) {
-        VariableSlot varSlot = super.createVariable(location);
+        VariableSlot varSlot;
+        if (compactLocations && location instanceof AstPathLocation) {
+            int existing = locations.lookup((AstPathLocation) location);
+            if (existing >= 0) {
+                varSlot = (VariableSlot) slotManager.getSlot(existing);
+            } else {
+                varSlot = super.createVariable(AnnotationLocation.MISSING_LOCATION);
+                locations.store(varSlot.getId(), (AstPathLocation) location);
+            }
+        } else {
+            varSlot = super.createVariable(location);
+        }
         // Forbid any explicit use of @Bottom to be inserted back to source code(no VariableSlot instance is inferred
         // @Bottom)
         if (generateBottomInequality) {
-            constraintManager.addInequalityConstraint(varSlot, slotManager.createConstantSlot(BOTTOM));
+            domains.forbid(varSlot.getId(), BOTTOM);
+            provenance.recordDomain(varSlot.getId(), "createVariable", null, null, null);
         }
         return varSlot;
     }
@@ -140,13 +203,17 @@ public class PICOVariableAnnotator extends VariableAnnotator {
             // the type arguments should be wildcards AND if I get the real type of "tree"
             // it corresponds to the declaration of adt.getUnderlyingType
             Element declarationEle = adt.getUnderlyingType().asElement();
-            final AnnotatedDeclaredType declaration =
-                    (AnnotatedDeclaredType) inferenceTypeFactory.getAnnotatedType(declarationEle);
-
-            final List<AnnotatedTypeMirror> declarationTypeArgs = declaration.getTypeArguments();
+            // Only the number of type arguments of the declaration is needed, which doesn't change between uses
+            Integer declarationTypeArgCount = declarationTypeArgCounts.get(declarationEle);
+            if (declarationTypeArgCount == null) {
+                final AnnotatedDeclaredType declaration =
+                        (AnnotatedDeclaredType) inferenceTypeFactory.getAnnotatedType(declarationEle);
+                declarationTypeArgCount = declaration.getTypeArguments().size();
+                declarationTypeArgCounts.put(declarationEle, declarationTypeArgCount);
+            }
             final List<AnnotatedTypeMirror> rawTypeArgs = adt.getTypeArguments();
 
-            for (int i = 0; i < declarationTypeArgs.size(); i++) {
+            for (int i = 0; i < declarationTypeArgCount; i++) {
 
                 if (InferenceMain.isHackMode(rawTypeArgs.get(i).getKind() != TypeKind.WILDCARD)) {
                     return false;
@@ -161,10 +228,8 @@ public class PICOVariableAnnotator extends VariableAnnotator {
                 // Type argument is "? extends Object", so it became "? extends @Readonly Object".
                 // This type argument then flows to local variable, and passed as actual method receiver.
                 // Since declared receiver is defaulted to @Mutable, it caused inference to give no solution.
-                rawArg.getExtendsBound().addMissingAnnotations(
-                        Arrays.asList(PICOTypeUtil.createEquivalentVarAnnotOfRealQualifier(MUTABLE)));
-                rawArg.getSuperBound().addMissingAnnotations(
-                        Arrays.asList(PICOTypeUtil.createEquivalentVarAnnotOfRealQualifier(BOTTOM)));
+                rawArg.getExtendsBound().addMissingAnnotations(mutableVarAnnot);
+                rawArg.getSuperBound().addMissingAnnotations(bottomVarAnnot);
                 // The only different ends
             }
             return true;
@@ -195,7 +260,9 @@ public class PICOVariableAnnotator extends VariableAnnotator {
             generateBottomInequality = prev;
 
             // Visit extend bound, construct an artificial extends bound tree to represent the extendbound.
-            ArtificialExtendsBoundTree artificialExtendsBoundTree = new ArtificialExtendsBoundTree(wildcardTree);
+            // Reuse the tree of an earlier visit of the same wildcard, so the bound maps to the same variable
+            ArtificialExtendsBoundTree artificialExtendsBoundTree =
+                    artificialExtendsBounds.computeIfAbsent(wildcardTree, ArtificialExtendsBoundTree::new);
             addPrimaryVariable(wildcardType.getExtendsBound(), artificialExtendsBoundTree);
 
         } else if (wildcardKind == Tree.Kind.EXTENDS_WILDCARD) {
@@ -0,0 +1,490 @@
+package pico.inference.solver;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import exceptions.solver.CheckpointFormatException;
+import org.checkerframework.javacutil.AnnotationUtils;
+import pico.inference.PICOSlotDomains;
+
+import javax.lang.model.element.AnnotationMirror;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary checkpoint of the slots and constraints generated by PICOInfer, so that solving can be
+ * retried with different solver arguments without re-running javac and constraint generation.
+ *
+ * <p>The file is a versioned stream of records: a header, one record per slot in increasing id
+ * order, one record per constraint, one record per slot whose domain is restricted, and a trailer
+ * holding the record counts. Integers are written as varints and constant slots refer to a
+ * qualifier table stored in the header, so the format doesn't depend on the order of PICO's
+ * qualifiers. Both directions stream through a fixed-size buffer: the only memory that grows with
+ * the checkpoint is the slots and constraints themselves, which the solver needs anyway.
+ *
+ * <p>AnnotationLocations are stored as text. They need the original compilation unit to be turned
+ * back into insertable locations, so a resumed run only uses them to report where each solution
+ * belongs (see {@link Content#getLocation(int)}).
+ */
+public class PICOConstraintCheckpoint {
+
+    /**"PCKP"*/
+    private static final int MAGIC = 0x50434B50;
+    /**Bump whenever the record layout changes. Readers reject other versions.*/
+    public static final int VERSION = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte TAG_END = 0;
+    private static final byte TAG_SLOT = 1;
+    private static final byte TAG_CONSTRAINT = 2;
+    private static final byte TAG_DOMAIN = 3;
+
+    private static final byte SLOT_VARIABLE = 0;
+    private static final byte SLOT_CONSTANT = 1;
+    private static final byte SLOT_COMB = 2;
+    private static final byte SLOT_REFINEMENT = 3;
+    private static final byte SLOT_EXISTENTIAL = 4;
+    private static final byte SLOT_LUB = 5;
+
+    private static final byte CONSTRAINT_SUBTYPE = 0;
+    private static final byte CONSTRAINT_EQUALITY = 1;
+    private static final byte CONSTRAINT_INEQUALITY = 2;
+    private static final byte CONSTRAINT_COMPARABLE = 3;
+    private static final byte CONSTRAINT_COMBINE = 4;
+    private static final byte CONSTRAINT_PREFERENCE = 5;
+    private static final byte CONSTRAINT_EXISTENTIAL = 6;
+    private static final byte CONSTRAINT_IMPLICATION = 7;
+
+    private static final byte LOCATION_MISSING = 0;
+    private static final byte LOCATION_CLASS_DECL = 1;
+    private static final byte LOCATION_AST_PATH = 2;
+
+    /**Qualifiers a ConstantSlot can hold in PICOInfer. Index in this array is the ordinal written to the file*/
+    private static AnnotationMirror[] qualifiers() {
+        return PICOSlotDomains.qualifiers();
+    }
+
+    /**Slots, constraints and slot domains decoded from a checkpoint*/
+    public static class Content {
+        public final List<Slot> slots;
+        public final List<Constraint> constraints;
+        public final PICOSlotDomains domains;
+        private final Map<Integer, String> locations;
+
+        private Content(List<Slot> slots, List<Constraint> constraints, PICOSlotDomains domains,
+                        Map<Integer, String> locations) {
+            this.slots = slots;
+            this.constraints = constraints;
+            this.domains = domains;
+            this.locations = locations;
+        }
+
+        /**Textual AnnotationLocation recorded for slot id, or null if the slot had no location*/
+        public String getLocation(int slotId) {
+            return locations.get(slotId);
+        }
+    }
+
+    public static void write(File file, Collection<Slot> slots, Collection<Constraint> constraints,
+                             PICOSlotDomains domains) {
+        List<Slot> sorted = new ArrayList<>(slots);
+        // Operand slots of combination/refinement/lub slots are always created first, so id order
+        // guarantees every referenced slot is decoded before it is used
+        sorted.sort(Comparator.comparingInt(Slot::getId));
+        AnnotationMirror[] qualifiers = qualifiers();
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(qualifiers.length);
+            for (AnnotationMirror qualifier : qualifiers) {
+                out.writeUTF(AnnotationUtils.annotationName(qualifier));
+            }
+
+            for (Slot slot : sorted) {
+                out.writeByte(TAG_SLOT);
+                writeSlot(out, slot, qualifiers);
+            }
+            int constraintCount = 0;
+            for (Constraint constraint : constraints) {
+                out.writeByte(TAG_CONSTRAINT);
+                writeConstraint(out, constraint);
+                constraintCount++;
+            }
+            int domainCount = 0;
+            for (Slot slot : sorted) {
+                List<AnnotationMirror> forbidden = domains.getForbidden(slot.getId());
+                if (forbidden.isEmpty()) {
+                    continue;
+                }
+                out.writeByte(TAG_DOMAIN);
+                writeVarInt(out, slot.getId());
+                writeVarInt(out, forbidden.size());
+                for (AnnotationMirror qualifier : forbidden) {
+                    writeVarInt(out, ordinalOf(qualifier, qualifiers));
+                }
+                domainCount++;
+            }
+
+            out.writeByte(TAG_END);
+            writeVarInt(out, sorted.size());
+            writeVarInt(out, constraintCount);
+            writeVarInt(out, domainCount);
+        } catch (IOException e) {
+            throw new CheckpointFormatException("Cannot write checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+
+    public static Content read(File file) {
+        ConstraintManager constraintManager = InferenceMain.getInstance().getConstraintManager();
+        AnnotationMirror[] known = qualifiers();
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new CheckpointFormatException(file + " is not a PICO checkpoint");
+            }
+            int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                throw new CheckpointFormatException("Unsupported checkpoint version " + version
+                        + " in " + file + ", expected " + VERSION);
+            }
+            AnnotationMirror[] qualifiers = new AnnotationMirror[in.readUnsignedByte()];
+            for (int i = 0; i < qualifiers.length; i++) {
+                qualifiers[i] = resolveQualifier(in.readUTF(), known);
+            }
+
+            Slot[] slotsById = new Slot[1024];
+            List<Slot> slots = new ArrayList<>();
+            List<Constraint> constraints = new ArrayList<>();
+            Map<Integer, String> locations = new HashMap<>();
+            PICOSlotDomains domains = new PICOSlotDomains();
+            int domainCount = 0;
+            while (true) {
+                byte tag = in.readByte();
+                if (tag == TAG_SLOT) {
+                    Slot slot = readSlot(in, slotsById, qualifiers, locations);
+                    if (slot.getId() >= slotsById.length) {
+                        slotsById = Arrays.copyOf(slotsById, Math.max(slotsById.length * 2, slot.getId() + 1));
+                    }
+                    slotsById[slot.getId()] = slot;
+                    slots.add(slot);
+                } else if (tag == TAG_CONSTRAINT) {
+                    constraints.add(readConstraint(in, slotsById, constraintManager));
+                } else if (tag == TAG_DOMAIN) {
+                    readDomain(in, slotsById, qualifiers, domains);
+                    domainCount++;
+                } else if (tag == TAG_END) {
+                    break;
+                } else {
+                    throw new CheckpointFormatException("Unknown record tag " + tag + " in " + file);
+                }
+            }
+            if (readVarInt(in) != slots.size() || readVarInt(in) != constraints.size()
+                    || readVarInt(in) != domainCount) {
+                throw new CheckpointFormatException("Record counts in trailer of " + file + " don't match its content");
+            }
+            return new Content(slots, constraints, domains, locations);
+        } catch (EOFException e) {
+            throw new CheckpointFormatException("Checkpoint " + file + " is truncated");
+        } catch (IOException e) {
+            throw new CheckpointFormatException("Cannot read checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static AnnotationMirror resolveQualifier(String name, AnnotationMirror[] known) {
+        for (AnnotationMirror am : known) {
+            if (AnnotationUtils.annotationName(am).contentEquals(name)) {
+                return am;
+            }
+        }
+        throw new CheckpointFormatException("Unknown qualifier in checkpoint: " + name);
+    }
+
+    private static void writeSlot(DataOutputStream out, Slot slot, AnnotationMirror[] qualifiers) throws IOException {
+        // Subclasses before their super classes
+        if (slot instanceof ConstantSlot) {
+            out.writeByte(SLOT_CONSTANT);
+            writeVarInt(out, slot.getId());
+            writeVarInt(out, ordinalOf(((ConstantSlot) slot).getValue(), qualifiers));
+            return;
+        }
+        if (slot instanceof CombVariableSlot) {
+            CombVariableSlot comb = (CombVariableSlot) slot;
+            out.writeByte(SLOT_COMB);
+            writeVarInt(out, slot.getId());
+            writeVarInt(out, comb.getFirst().getId());
+            writeVarInt(out, comb.getSecond().getId());
+        } else if (slot instanceof RefinementVariableSlot) {
+            out.writeByte(SLOT_REFINEMENT);
+            writeVarInt(out, slot.getId());
+            writeVarInt(out, ((RefinementVariableSlot) slot).getRefined().getId());
+        } else if (slot instanceof LubVariableSlot) {
+            LubVariableSlot lub = (LubVariableSlot) slot;
+            out.writeByte(SLOT_LUB);
+            writeVarInt(out, slot.getId());
+            writeVarInt(out, lub.getLeft().getId());
+            writeVarInt(out, lub.getRight().getId());
+        } else if (slot instanceof ExistentialVariableSlot) {
+            ExistentialVariableSlot existential = (ExistentialVariableSlot) slot;
+            out.writeByte(SLOT_EXISTENTIAL);
+            writeVarInt(out, slot.getId());
+            writeVarInt(out, existential.getPotentialSlot().getId());
+            writeVarInt(out, existential.getAlternativeSlot().getId());
+        } else {
+            out.writeByte(SLOT_VARIABLE);
+            writeVarInt(out, slot.getId());
+        }
+        writeLocation(out, slot.getLocation());
+    }
+
+    private static Slot readSlot(DataInputStream in, Slot[] slotsById, AnnotationMirror[] qualifiers,
+                                 Map<Integer, String> locations) throws IOException {
+        byte kind = in.readByte();
+        int id = readVarInt(in);
+        if (kind == SLOT_CONSTANT) {
+            int ordinal = readVarInt(in);
+            if (ordinal >= qualifiers.length) {
+                throw new CheckpointFormatException("Qualifier ordinal " + ordinal + " out of range for slot " + id);
+            }
+            return new ConstantSlot(qualifiers[ordinal], id);
+        }
+
+        Slot slot;
+        switch (kind) {
+            case SLOT_VARIABLE:
+                slot = new VariableSlot(AnnotationLocation.MISSING_LOCATION, id);
+                break;
+            case SLOT_COMB:
+                slot = new CombVariableSlot(AnnotationLocation.MISSING_LOCATION, id,
+                        lookup(slotsById, readVarInt(in)), lookup(slotsById, readVarInt(in)));
+                break;
+            case SLOT_REFINEMENT:
+                slot = new RefinementVariableSlot(AnnotationLocation.MISSING_LOCATION, id,
+                        lookup(slotsById, readVarInt(in)));
+                break;
+            case SLOT_LUB:
+                slot = new LubVariableSlot(AnnotationLocation.MISSING_LOCATION, id,
+                        lookup(slotsById, readVarInt(in)), lookup(slotsById, readVarInt(in)));
+                break;
+            case SLOT_EXISTENTIAL:
+                slot = new ExistentialVariableSlot(id,
+                        (VariableSlot) lookup(slotsById, readVarInt(in)), (VariableSlot) lookup(slotsById, readVarInt(in)));
+                break;
+            default:
+                throw new CheckpointFormatException("Unknown slot kind " + kind + " for slot " + id);
+        }
+        String location = readLocation(in);
+        if (location != null) {
+            locations.put(id, location);
+        }
+        return slot;
+    }
+
+    private static void readDomain(DataInputStream in, Slot[] slotsById, AnnotationMirror[] qualifiers,
+                                   PICOSlotDomains domains) throws IOException {
+        int id = lookup(slotsById, readVarInt(in)).getId();
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            int ordinal = readVarInt(in);
+            if (ordinal >= qualifiers.length) {
+                throw new CheckpointFormatException("Qualifier ordinal " + ordinal + " out of range for domain of slot " + id);
+            }
+            domains.forbid(id, qualifiers[ordinal]);
+        }
+    }
+
+    private static Slot lookup(Slot[] slotsById, int id) {
+        Slot slot = id < slotsById.length ? slotsById[id] : null;
+        if (slot == null) {
+            throw new CheckpointFormatException("Reference to undeclared slot " + id);
+        }
+        return slot;
+    }
+
+    private static void writeLocation(DataOutputStream out, AnnotationLocation location) throws IOException {
+        if (location instanceof ClassDeclLocation) {
+            out.writeByte(LOCATION_CLASS_DECL);
+            out.writeUTF(((ClassDeclLocation) location).getFullyQualifiedClassName());
+        } else if (location instanceof AstPathLocation) {
+            out.writeByte(LOCATION_AST_PATH);
+            out.writeUTF(location.toString());
+        } else {
+            out.writeByte(LOCATION_MISSING);
+        }
+    }
+
+    private static String readLocation(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case LOCATION_MISSING:
+                return null;
+            case LOCATION_CLASS_DECL:
+            case LOCATION_AST_PATH:
+                return in.readUTF();
+            default:
+                throw new CheckpointFormatException("Unknown location kind " + kind);
+        }
+    }
+
+    private static void writeConstraint(DataOutputStream out, Constraint constraint) throws IOException {
+        if (constraint instanceof SubtypeConstraint) {
+            SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+            out.writeByte(CONSTRAINT_SUBTYPE);
+            writeVarInt(out, subtype.getSubtype().getId());
+            writeVarInt(out, subtype.getSupertype().getId());
+        } else if (constraint instanceof EqualityConstraint) {
+            EqualityConstraint equality = (EqualityConstraint) constraint;
+            out.writeByte(CONSTRAINT_EQUALITY);
+            writeVarInt(out, equality.getFirst().getId());
+            writeVarInt(out, equality.getSecond().getId());
+        } else if (constraint instanceof InequalityConstraint) {
+            InequalityConstraint inequality = (InequalityConstraint) constraint;
+            out.writeByte(CONSTRAINT_INEQUALITY);
+            writeVarInt(out, inequality.getFirst().getId());
+            writeVarInt(out, inequality.getSecond().getId());
+        } else if (constraint instanceof ComparableConstraint) {
+            ComparableConstraint comparable = (ComparableConstraint) constraint;
+            out.writeByte(CONSTRAINT_COMPARABLE);
+            writeVarInt(out, comparable.getFirst().getId());
+            writeVarInt(out, comparable.getSecond().getId());
+        } else if (constraint instanceof CombineConstraint) {
+            CombineConstraint combine = (CombineConstraint) constraint;
+            out.writeByte(CONSTRAINT_COMBINE);
+            writeVarInt(out, combine.getTarget().getId());
+            writeVarInt(out, combine.getDeclared().getId());
+            writeVarInt(out, combine.getResult().getId());
+        } else if (constraint instanceof PreferenceConstraint) {
+            PreferenceConstraint preference = (PreferenceConstraint) constraint;
+            out.writeByte(CONSTRAINT_PREFERENCE);
+            writeVarInt(out, preference.getVariable().getId());
+            writeVarInt(out, preference.getGoal().getId());
+            writeVarInt(out, preference.getWeight());
+        } else if (constraint instanceof ExistentialConstraint) {
+            ExistentialConstraint existential = (ExistentialConstraint) constraint;
+            out.writeByte(CONSTRAINT_EXISTENTIAL);
+            writeVarInt(out, existential.getPotentialVariable().getId());
+            writeConstraints(out, existential.getPotentialConstraints());
+            writeConstraints(out, existential.getAlternateConstraints());
+        } else if (constraint instanceof ImplicationConstraint) {
+            ImplicationConstraint implication = (ImplicationConstraint) constraint;
+            out.writeByte(CONSTRAINT_IMPLICATION);
+            writeConstraints(out, implication.getAssumptions());
+            writeConstraint(out, implication.getConclusion());
+        } else {
+            throw new CheckpointFormatException("Constraint kind not supported by checkpoint: " + constraint.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeConstraints(DataOutputStream out, List<Constraint> constraints) throws IOException {
+        writeVarInt(out, constraints.size());
+        for (Constraint c : constraints) {
+            writeConstraint(out, c);
+        }
+    }
+
+    private static Constraint readConstraint(DataInputStream in, Slot[] slotsById, ConstraintManager cm) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case CONSTRAINT_SUBTYPE:
+                return cm.createSubtypeConstraint(lookup(slotsById, readVarInt(in)), lookup(slotsById, readVarInt(in)));
+            case CONSTRAINT_EQUALITY:
+                return cm.createEqualityConstraint(lookup(slotsById, readVarInt(in)), lookup(slotsById, readVarInt(in)));
+            case CONSTRAINT_INEQUALITY:
+                return cm.createInequalityConstraint(lookup(slotsById, readVarInt(in)), lookup(slotsById, readVarInt(in)));
+            case CONSTRAINT_COMPARABLE:
+                return cm.createComparableConstraint(lookup(slotsById, readVarInt(in)), lookup(slotsById, readVarInt(in)));
+            case CONSTRAINT_COMBINE:
+                return cm.createCombineConstraint(lookup(slotsById, readVarInt(in)),
+                        lookup(slotsById, readVarInt(in)), lookup(slotsById, readVarInt(in)));
+            case CONSTRAINT_PREFERENCE:
+                return cm.createPreferenceConstraint((VariableSlot) lookup(slotsById, readVarInt(in)),
+                        (ConstantSlot) lookup(slotsById, readVarInt(in)), readVarInt(in));
+            case CONSTRAINT_EXISTENTIAL: {
+                Slot potential = lookup(slotsById, readVarInt(in));
+                List<Constraint> potentialConstraints = readConstraints(in, slotsById, cm);
+                List<Constraint> alternateConstraints = readConstraints(in, slotsById, cm);
+                return cm.createExistentialConstraint(potential, potentialConstraints, alternateConstraints);
+            }
+            case CONSTRAINT_IMPLICATION: {
+                List<Constraint> assumptions = readConstraints(in, slotsById, cm);
+                Constraint conclusion = readConstraint(in, slotsById, cm);
+                return cm.createImplicationConstraint(assumptions, conclusion);
+            }
+            default:
+                throw new CheckpointFormatException("Unknown constraint kind " + kind);
+        }
+    }
+
+    private static List<Constraint> readConstraints(DataInputStream in, Slot[] slotsById, ConstraintManager cm) throws IOException {
+        int size = readVarInt(in);
+        List<Constraint> constraints = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            constraints.add(readConstraint(in, slotsById, cm));
+        }
+        return constraints;
+    }
+
+    private static int ordinalOf(AnnotationMirror am, AnnotationMirror[] qualifiers) {
+        for (int i = 0; i < qualifiers.length; i++) {
+            if (AnnotationUtils.areSame(am, qualifiers[i])) {
+                return i;
+            }
+        }
+        throw new CheckpointFormatException("Unknown qualifier on constant slot: " + am);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CheckpointFormatException("Malformed varint");
+    }
+}
@@ -1,24 +1,155 @@
 package pico.inference.solver;
 
+import checkers.inference.InferenceMain;
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.ExistentialConstraint;
+import checkers.inference.model.ImplicationConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.SubtypeConstraint;
 import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
 import checkers.inference.solver.backend.encoder.combine.CombineConstraintEncoder;
 import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
 import checkers.inference.solver.backend.maxsat.encoder.MaxSATConstraintEncoderFactory;
+import checkers.inference.solver.backend.maxsat.MathUtils;
+import checkers.inference.solver.backend.maxsat.VectorUtils;
 import checkers.inference.solver.frontend.Lattice;
 import org.sat4j.core.VecInt;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.PICOSlotDomains;
+
+import javax.lang.model.element.AnnotationMirror;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * {@link checkers.inference.solver.backend.FormatTranslator} that encodes constraints to format that
  * underlying solver can understand. Difference from super class is this class also encodes viewpoint
- * adaptation logic by delegating to {@link PICOCombineConstraintEncoder}
+ * adaptation logic by delegating to {@link PICOCombineConstraintEncoder}, and the well-formedness of a slot
+ * only allows the values of its domain, see {@link PICOSlotDomains}.
  */
 public class PICOFormatTranslator extends MaxSatFormatTranslator{
 
+    /**Number of non-empty clauses each constraint was serialized to, null unless clauses are counted*/
+    private Map<Constraint, Integer> clauseCounts;
+
     public PICOFormatTranslator(Lattice lattice) {
         super(lattice);
 
     }
 
+    /**Counts the clauses of every constraint serialized from now on, for {@link #getClauses(Constraint)}*/
+    public void countClauses() {
+        clauseCounts = new IdentityHashMap<>();
+    }
+
+    /**@return number of non-empty clauses constraint was serialized to, 0 if it wasn't or clauses aren't counted*/
+    public int getClauses(Constraint constraint) {
+        Integer clauses = clauseCounts == null ? null : clauseCounts.get(constraint);
+        return clauses == null ? 0 : clauses;
+    }
+
+    // Every constraint kind is serialized through one of the overrides below, so that both MaxSatSolver and
+    // PICOTieredMaxSatSolver report real clause counts
+
+    @Override
+    public VecInt[] serialize(SubtypeConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    @Override
+    public VecInt[] serialize(EqualityConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    @Override
+    public VecInt[] serialize(InequalityConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    @Override
+    public VecInt[] serialize(ComparableConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    @Override
+    public VecInt[] serialize(CombineConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    @Override
+    public VecInt[] serialize(PreferenceConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    @Override
+    public VecInt[] serialize(ExistentialConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    @Override
+    public VecInt[] serialize(ImplicationConstraint constraint) {
+        return counted(constraint, super.serialize(constraint));
+    }
+
+    private VecInt[] counted(Constraint constraint, VecInt[] encoding) {
+        if (clauseCounts != null) {
+            int clauses = 0;
+            for (VecInt clause : encoding) {
+                if (clause != null && clause.size() > 0) {
+                    clauses++;
+                }
+            }
+            // Same count if a constraint is serialized again, e.g. to extract an unsat core
+            clauseCounts.put(constraint, clauses);
+        }
+        return encoding;
+    }
+
+    /**
+     * A slot takes exactly one of the values of its domain. Forbidden values are fixed to false by a
+     * unit clause, so the solver never branches on them, and they are left out of the other clauses.
+     */
+    @Override
+    public void generateWellFormednessClauses(List<VecInt> wellFormednessClauses, Integer varSlotId) {
+        PICOSlotDomains domains = ((PICOInferenceChecker) InferenceMain.getInstance().getRealChecker()).getSlotDomains();
+        List<Integer> allowed = new ArrayList<>();
+        for (Map.Entry<AnnotationMirror, Integer> e : typeToInt.entrySet()) {
+            int var = MathUtils.mapIdToMatrixEntry(varSlotId, e.getValue(), lattice);
+            if (domains.isAllowed(varSlotId, e.getKey())) {
+                allowed.add(var);
+            } else {
+                wellFormednessClauses.add(VectorUtils.asVec(-var));
+            }
+        }
+        int[] leastOneIsTrue = new int[allowed.size()];
+        for (int i = 0; i < allowed.size(); i++) {
+            leastOneIsTrue[i] = allowed.get(i);
+        }
+        wellFormednessClauses.add(VectorUtils.asVec(leastOneIsTrue));
+        for (int i = 0; i < allowed.size(); i++) {
+            for (int j = i + 1; j < allowed.size(); j++) {
+                wellFormednessClauses.add(VectorUtils.asVec(-allowed.get(i), -allowed.get(j)));
+            }
+        }
+    }
+
+    /**@return qualifier of slot id in a model given as truth value per variable, null if none is true*/
+    public AnnotationMirror decodeSlot(int slotId, boolean[] isTrue) {
+        for (Map.Entry<AnnotationMirror, Integer> e : typeToInt.entrySet()) {
+            int var = MathUtils.mapIdToMatrixEntry(slotId, e.getValue(), lattice);
+            if (var < isTrue.length && isTrue[var]) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
     @Override
     protected ConstraintEncoderFactory<VecInt[]> createConstraintEncoderFactory() {
         return new MaxSATConstraintEncoderFactory(lattice, typeToInt, this){
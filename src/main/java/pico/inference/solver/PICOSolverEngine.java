@@ -1,38 +1,334 @@
 package pico.inference.solver;
 
 import checkers.inference.BaseInferenceResult;
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceOptions;
 import checkers.inference.InferenceResult;
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
+import checkers.inference.model.PreferenceConstraint;
 import checkers.inference.model.Slot;
 import checkers.inference.solver.SolverEngine;
+import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.backend.SolverFactory;
-import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
 import checkers.inference.solver.backend.maxsat.MaxSatSolverFactory;
 import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.frontend.LatticeBuilder;
+import checkers.inference.solver.util.SolverEnvironment;
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.util.Log;
+import exceptions.solver.SolverException;
 import org.checkerframework.framework.type.QualifierHierarchy;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.TimeoutException;
+import pico.inference.PICOConstraintProvenance;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.PICOInferenceVerifier;
+import pico.inference.PICOSlotDomains;
+import pico.inference.PICOSlotLocations;
+import pico.inference.PICOSourceAnnotationWriter;
+import pico.typecheck.PICOSummary;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import java.io.File;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * {@link SolverEngine} that creates {@link PICOFormatTranslator} and pass it to actual underlying MaxSat solver
  * to solve constraints
+ *
+ * Besides the standard solver arguments, it understands:
+ * <ul>
+ *  <li>checkpoint=FILE: write all generated slots and constraints to FILE before solving</li>
+ *  <li>resumeFrom=FILE: ignore the constraints of the current run and solve the ones in checkpoint FILE instead</li>
+ *  <li>insertTo=DIR: write annotated sources to DIR in process, see {@link PICOSourceAnnotationWriter}</li>
+ *  <li>verify=true: type check the solutions in process and write the outcome to pico-verify-result.txt, see
+ *  {@link PICOInferenceVerifier}</li>
+ *  <li>summaryOut=FILE: write the inferred summary of this module to FILE, see {@link PICOSummary}</li>
+ *  <li>tieredPreferences=true: solve preferences tier by tier instead of in one weighted MaxSat call, see
+ *  {@link PICOTieredMaxSatSolver}. Heavier
+ *  tiers then win over any number of violations of lighter ones, which the weighted sum doesn't guarantee,
+ *  so solutions may differ</li>
+ * </ul>
+ * See {@link PICOConstraintCheckpoint} for the file format.
+ *
+ * If there is no solution, whichever solver was used, a minimal unsatisfiable core of the hard constraints and
+ * slot domains is reported, see {@link PICOUnsatCore}.
  */
 public class PICOSolverEngine extends SolverEngine {
+
+    public static final String CHECKPOINT = "checkpoint";
+    public static final String RESUME_FROM = "resumeFrom";
+    public static final String INSERT_TO = "insertTo";
+    public static final String VERIFY = "verify";
+    public static final String SUMMARY_OUT = PICOSummary.SUMMARY_OUT;
+    public static final String TIERED_PREFERENCES = "tieredPreferences";
+
+    private boolean tieredPreferences = false;
+    /**Translator of the solver, which counts the clauses of every constraint if the profiler is enabled*/
+    private PICOFormatTranslator translator;
+
+    /**@return whether the solver of this inference run is PICOSolverEngine or a subclass of it*/
+    public static boolean isConfigured() {
+        if (InferenceOptions.solver == null) {
+            return false;
+        }
+        try {
+            return PICOSolverEngine.class.isAssignableFrom(Class.forName(InferenceOptions.solver));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
     @Override
     public InferenceResult solve(Map<String, String> configuration, Collection<Slot> slots, Collection<Constraint> constraints, QualifierHierarchy qualHierarchy, ProcessingEnvironment processingEnvironment) {
+        tieredPreferences = "true".equals(configuration.get(TIERED_PREFERENCES));
+        PICOInferenceChecker checker = (PICOInferenceChecker) InferenceMain.getInstance().getRealChecker();
+        PICOSlotDomains domains = checker.getSlotDomains();
+        PICOConstraintCheckpoint.Content resumed = null;
+        if (configuration.containsKey(RESUME_FROM)) {
+            resumed = PICOConstraintCheckpoint.read(new File(configuration.get(RESUME_FROM)));
+            slots = resumed.slots;
+            constraints = resumed.constraints;
+            reserveSlotIds(resumed.slots);
+            // PICOFormatTranslator encodes the domains of the checker, so replace the ones of this run
+            domains.clear();
+            // Provenance of this run is by position of its own constraints
+            checker.getProvenance().clearConstraints();
+            for (Slot slot : resumed.slots) {
+                for (AnnotationMirror forbidden : resumed.domains.getForbidden(slot.getId())) {
+                    domains.forbid(slot.getId(), forbidden);
+                }
+            }
+        } else if (configuration.containsKey(CHECKPOINT)) {
+            // The checkpoint records the location of every slot
+            restoreLocations(checker);
+            PICOConstraintCheckpoint.write(new File(configuration.get(CHECKPOINT)), slots, constraints, domains);
+        }
+
         InferenceResult result= super.solve(configuration, slots, constraints, qualHierarchy, processingEnvironment);
+        restoreLocations(checker);
+        if (!result.hasSolution()) {
+            reportUnsatCore(slots, constraints, new LatticeBuilder().buildLattice(qualHierarchy, slots), checker);
+        }
         if (collectStatistics && result.hasSolution()) {
             writeInferenceResult("pico-inference-result.txt", ((BaseInferenceResult)result).inferredResults);
         }
+        if (collectStatistics) {
+            checker.getStatistics().print(System.out, "PICO Inference Statistics");
+        }
+        if (checker.getProfiler() != null) {
+            int position = 0;
+            for (Constraint constraint : constraints) {
+                int clauses = translator == null ? 0 : translator.getClauses(constraint);
+                checker.getProfiler().count(constraint, position++, clauses, checker.getProvenance());
+            }
+            checker.getProfiler().report(checker.getProvenance());
+        }
+        if (resumed != null && result.hasSolution()) {
+            // Locations of the checkpointed slots don't belong to the sources of this run, so they can't go to
+            // the jaif. Report them by slot id instead.
+            writeResumedResult("pico-checkpoint-result.txt", ((BaseInferenceResult)result).inferredResults, resumed);
+        }
+        if (resumed == null && configuration.containsKey(INSERT_TO) && result.hasSolution()) {
+            insertSolutions(configuration.get(INSERT_TO), result, processingEnvironment);
+        }
+        if (resumed == null && "true".equals(configuration.get(VERIFY)) && result.hasSolution()) {
+            verifySolutions(result, processingEnvironment);
+        }
+        if (resumed == null && configuration.containsKey(SUMMARY_OUT) && result.hasSolution()) {
+            PICOInferenceVerifier.writeSummary(new File(configuration.get(SUMMARY_OUT)), result, processingEnvironment);
+        }
         return result;
     }
 
+    private static void insertSolutions(String outputDir, InferenceResult result, ProcessingEnvironment processingEnvironment) {
+        PICOSourceAnnotationWriter writer = new PICOSourceAnnotationWriter(Paths.get(outputDir), processingEnvironment);
+        PICOInferenceChecker checker = (PICOInferenceChecker) InferenceMain.getInstance().getRealChecker();
+        List<String> fallback = writer.write(checker.getCompilationUnits(),
+                InferenceMain.getInstance().getSlotManager().getVariableSlots(), result);
+        // Always (re)write the list, so that a stale list from previous run isn't picked up by infer.sh
+        String writePath = new File(new File("").getAbsolutePath()).toString() + File.separator + PICOSourceAnnotationWriter.FALLBACK_FILE;
+        try (PrintWriter pw = new PrintWriter(writePath)) {
+            for (String file : fallback) {
+                pw.println(file);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Type checks the solutions and writes the number of compilation units checked and of errors the checker
+     * reported for them to pico-verify-result.txt.
+     */
+    private static void verifySolutions(InferenceResult result, ProcessingEnvironment processingEnvironment) {
+        Log log = Log.instance(((JavacProcessingEnvironment) processingEnvironment).getContext());
+        int errorsBefore = log.nerrors;
+        int units = PICOInferenceVerifier.verify(result, processingEnvironment);
+        int errors = log.nerrors - errorsBefore;
+        System.out.println("Verified solutions in " + units + " compilation units: " + errors + " errors");
+        String writePath = new File(new File("").getAbsolutePath()).toString() + File.separator + "pico-verify-result.txt";
+        try (PrintWriter pw = new PrintWriter(writePath)) {
+            pw.println("CheckedUnits," + units);
+            pw.println("Errors," + errors);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Encodes the hard constraints and slot domains again, one {@link PICOUnsatCore} group each, and prints a
+     * minimal set of them that can't hold together, with the rule and source line each came from. The set is
+     * also written to pico-unsat-core.txt.
+     */
+    private static void reportUnsatCore(Collection<Slot> slots, Collection<Constraint> constraints, Lattice lattice,
+                                        PICOInferenceChecker checker) {
+        long start = System.nanoTime();
+        PICOFormatTranslator translator = new PICOFormatTranslator(lattice);
+        PICOUnsatCore unsatCore = new PICOUnsatCore();
+        // An origin is the position of a constraint, or -1 - slot id for a domain
+        List<Integer> origins = new ArrayList<>();
+        List<Constraint> ordered = new ArrayList<>(constraints);
+        Set<Integer> varSlotIds = new TreeSet<>();
+        int maxVar = 0;
+        for (int position = 0; position < ordered.size(); position++) {
+            Constraint constraint = ordered.get(position);
+            if (constraint instanceof PreferenceConstraint) {
+                continue;
+            }
+            for (Slot slot : constraint.getSlots()) {
+                if (!(slot instanceof ConstantSlot)) {
+                    varSlotIds.add(slot.getId());
+                }
+            }
+            List<VecInt> group = new ArrayList<>();
+            for (VecInt clause : constraint.serialize(translator)) {
+                if (clause != null && clause.size() > 0) {
+                    group.add(clause);
+                    maxVar = Math.max(maxVar, PICOTieredMaxSatSolver.maxVar(clause));
+                }
+            }
+            if (!group.isEmpty()) {
+                unsatCore.addGroup(group);
+                origins.add(position);
+            }
+        }
+        List<VecInt> wellFormedness = new ArrayList<>();
+        for (Integer varSlotId : varSlotIds) {
+            List<VecInt> clauses = new ArrayList<>();
+            translator.generateWellFormednessClauses(clauses, varSlotId);
+            // Clauses of at most one literal are there because the domain of the slot is restricted
+            List<VecInt> domain = new ArrayList<>();
+            for (VecInt clause : clauses) {
+                (clause.size() <= 1 ? domain : wellFormedness).add(clause);
+                maxVar = Math.max(maxVar, PICOTieredMaxSatSolver.maxVar(clause));
+            }
+            if (!domain.isEmpty()) {
+                unsatCore.addGroup(domain);
+                origins.add(-1 - varSlotId);
+            }
+        }
+
+        List<Integer> core;
+        try {
+            core = unsatCore.extract(wellFormedness, maxVar);
+        } catch (TimeoutException e) {
+            throw new SolverException("Timeout while extracting unsat core");
+        }
+        PICOConstraintProvenance provenance = checker.getProvenance();
+        Map<Integer, Slot> slotsById = new HashMap<>();
+        for (Slot slot : slots) {
+            slotsById.put(slot.getId(), slot);
+        }
+        List<String> lines = new ArrayList<>();
+        for (Integer group : core) {
+            int origin = origins.get(group);
+            if (origin >= 0) {
+                String source = provenance.describe(origin);
+                lines.add((source == null ? "unknown rule" : source) + ": " + ordered.get(origin));
+            } else {
+                int slotId = -1 - origin;
+                String source = provenance.describeDomain(slotId);
+                Slot slot = slotsById.get(slotId);
+                lines.add((source == null ? "unknown rule" : source) + ": slot " + slotId + " is none of "
+                        + checker.getSlotDomains().getForbidden(slotId)
+                        + (slot == null ? "" : " at " + checker.getSlotLocations().locationOf(slot)));
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        checker.getStatistics().add("unsat.core.size", core.size());
+        checker.getStatistics().add("unsat.core.millis", millis);
+
+        System.out.println("No solution. Minimal unsatisfiable constraints (" + core.size() + ", found in " + millis + "ms):");
+        String writePath = new File(new File("").getAbsolutePath()).toString() + File.separator + "pico-unsat-core.txt";
+        try (PrintWriter pw = new PrintWriter(writePath)) {
+            for (String line : lines) {
+                System.out.println("  " + line);
+                pw.println(line);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Puts the locations kept by {@link PICOSlotLocations} during constraint generation back on the slots. The jaif,
+     * source insertion and the checkpoint read them from there.
+     */
+    private static void restoreLocations(PICOInferenceChecker checker) {
+        PICOSlotLocations locations = checker.getSlotLocations();
+        if (locations.getStored() > 0) {
+            checker.getStatistics().add("locations.stored", locations.getStored());
+            checker.getStatistics().add("locations.shared", locations.getShared());
+            checker.getStatistics().add("locations.arena.bytes", locations.getArenaBytes());
+        }
+        locations.restore(InferenceMain.getInstance().getSlotManager());
+    }
+
+    /**
+     * MaxSat backend sizes its variable pool from the number of slots in SlotManager. When resuming, SlotManager
+     * only knows slots of the (trivial) current compilation, so make it hand out placeholder slots until every
+     * checkpointed slot id fits into the pool.
+     */
+    private static void reserveSlotIds(Collection<Slot> checkpointed) {
+        SlotManager slotManager = InferenceMain.getInstance().getSlotManager();
+        int maxId = 0;
+        for (Slot slot : checkpointed) {
+            maxId = Math.max(maxId, slot.getId());
+        }
+        while (slotManager.getNumberOfSlots() <= maxId) {
+            slotManager.createVariableSlot(AnnotationLocation.MISSING_LOCATION);
+        }
+    }
+
+    private static void writeResumedResult(String filename, Map<Integer, AnnotationMirror> result,
+                                           PICOConstraintCheckpoint.Content resumed) {
+        String writePath = new File(new File("").getAbsolutePath()).toString() + File.separator + filename;
+        try (PrintWriter pw = new PrintWriter(writePath)) {
+            for (Slot slot : resumed.slots) {
+                String location = resumed.getLocation(slot.getId());
+                AnnotationMirror solution = result.get(slot.getId());
+                if (location != null && solution != null) {
+                    pw.println(slot.getId() + "," + solution + "," + location);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     public static void writeInferenceResult(String filename, Map<Integer, AnnotationMirror> result) {
         String writePath = new File(new File("").getAbsolutePath()).toString() + File.separator + filename;
         StringBuilder sb = new StringBuilder();
@@ -69,9 +365,23 @@ public class PICOSolverEngine extends SolverEngine {
     protected SolverFactory createSolverFactory() {
         return new MaxSatSolverFactory(){
             @Override
-            public MaxSatFormatTranslator createFormatTranslator(Lattice lattice) {
+            public PICOFormatTranslator createFormatTranslator(Lattice lattice) {
                 // Injects PICOFormatTranslator that has the custom logic for encoding viewpoint adaptation to underlying solver
-                return new PICOFormatTranslator(lattice);
+                translator = new PICOFormatTranslator(lattice);
+                if (((PICOInferenceChecker) InferenceMain.getInstance().getRealChecker()).getProfiler() != null) {
+                    translator.countClauses();
+                }
+                return translator;
+            }
+
+            @Override
+            public Solver<?> createSolver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
+                                          Collection<Constraint> constraints, Lattice lattice) {
+                if (!tieredPreferences) {
+                    return super.createSolver(solverEnvironment, slots, constraints, lattice);
+                }
+                return new PICOTieredMaxSatSolver(solverEnvironment, slots, constraints,
+                        createFormatTranslator(lattice), lattice);
             }
         };
     }
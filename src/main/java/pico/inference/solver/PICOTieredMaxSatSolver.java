@@ -0,0 +1,259 @@
+package pico.inference.solver;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.maxsat.MaxSatSolver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+import exceptions.solver.SolverException;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+import pico.inference.PICOInferenceChecker;
+import pico.typecheck.PICOStatistics;
+
+import javax.lang.model.element.AnnotationMirror;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Solves hard constraints and PreferenceConstraints as separate layers instead of one weighted MaxSAT
+ * problem. Preferences are grouped into tiers by weight and the tiers are optimized lexicographically,
+ * heaviest first: a tier minimizes its number of unsatisfied preferences given the optimum of every
+ * heavier tier.
+ *
+ * <p>Each tier is solved core-guided(MSU3): every preference gets a relaxation variable, the solver is
+ * asked to satisfy all non-relaxed preferences as assumptions, and each unsat core found moves its
+ * preferences to the relaxed set and raises the cardinality bound on it by one. The first satisfiable
+ * call is optimal for the tier, whose bound is then kept as a hard constraint. All tiers share one
+ * sat4j solver, so clauses learnt for the hard constraints and earlier tiers are reused.
+ */
+public class PICOTieredMaxSatSolver extends MaxSatSolver {
+
+    private final PICOFormatTranslator translator;
+
+    public PICOTieredMaxSatSolver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
+                                  Collection<Constraint> constraints, PICOFormatTranslator formatTranslator,
+                                  Lattice lattice) {
+        super(solverEnvironment, slots, constraints, formatTranslator, lattice);
+        this.translator = formatTranslator;
+    }
+
+    @Override
+    public Map<Integer, AnnotationMirror> solve() {
+        List<VecInt> hard = new ArrayList<>();
+        // Heaviest tier first
+        Map<Integer, List<VecInt>> tiers = new TreeMap<>((a, b) -> Integer.compare(b, a));
+        for (Constraint constraint : constraints) {
+            collectVarSlots(constraint);
+            VecInt[] encoding = constraint.serialize(formatTranslator);
+            for (VecInt clause : encoding) {
+                if (clause == null || clause.size() == 0) {
+                    continue;
+                }
+                if (constraint instanceof PreferenceConstraint) {
+                    int weight = ((PreferenceConstraint) constraint).getWeight();
+                    tiers.computeIfAbsent(weight, w -> new ArrayList<>()).add(clause);
+                } else {
+                    hard.add(clause);
+                }
+            }
+        }
+        for (Integer varSlotId : varSlotIds) {
+            formatTranslator.generateWellFormednessClauses(hard, varSlotId);
+        }
+
+        int maxVar = 0;
+        for (VecInt clause : hard) {
+            maxVar = Math.max(maxVar, maxVar(clause));
+        }
+        int preferences = 0;
+        for (List<VecInt> tier : tiers.values()) {
+            for (VecInt clause : tier) {
+                maxVar = Math.max(maxVar, maxVar(clause));
+            }
+            preferences += tier.size();
+        }
+
+        ISolver solver = SolverFactory.newDefault();
+        solver.setKeepSolverHot(true);
+        // Relaxation variables follow the slot variables. sat4j can't grow its variables between calls
+        solver.newVar(maxVar + preferences);
+        try {
+            boolean satisfiable;
+            List<int[]> relaxations = new ArrayList<>();
+            try {
+                for (VecInt clause : hard) {
+                    solver.addClause(clause);
+                }
+                // A hot solver only decides variables that were in a clause on its first call, so every tier is
+                // added before. Relaxed preferences don't change whether the hard clauses are satisfiable
+                int nextVar = maxVar;
+                for (List<VecInt> tier : tiers.values()) {
+                    int[] tierRelaxations = relax(solver, tier, nextVar);
+                    nextVar += tierRelaxations.length;
+                    relaxations.add(tierRelaxations);
+                }
+                satisfiable = solver.isSatisfiable();
+            } catch (ContradictionException e) {
+                satisfiable = false;
+            }
+            if (!satisfiable) {
+                // PICOSolverEngine reports the unsat core
+                return null;
+            }
+            int index = 0;
+            for (Map.Entry<Integer, List<VecInt>> tier : tiers.entrySet()) {
+                long start = System.nanoTime();
+                int cost = solveTier(solver, relaxations.get(index++));
+                report(tier.getKey(), tier.getValue().size(), cost, start);
+            }
+            return decode(solver.model());
+        } catch (ContradictionException e) {
+            // Hard clauses are satisfiable, and relaxed clauses and bounds can always be satisfied
+            throw new SolverException("Contradiction while solving preferences: " + e.getMessage());
+        } catch (TimeoutException e) {
+            throw new SolverException("Timeout while solving PICO constraints");
+        }
+    }
+
+    /**
+     * Adds the clauses of a tier, each with a fresh relaxation variable after nextVar: preference i is
+     * satisfied unless its relaxation variable is true. Tautologies are left out, they always hold, and sat4j
+     * drops them so their relaxation variable would be in no clause.
+     * @return relaxation variables of the preferences added
+     */
+    static int[] relax(ISolver solver, List<VecInt> tier, int nextVar) throws ContradictionException {
+        List<Integer> relaxations = new ArrayList<>();
+        for (VecInt clause : tier) {
+            if (isTautology(clause)) {
+                continue;
+            }
+            VecInt relaxed = new VecInt();
+            clause.copyTo(relaxed);
+            relaxations.add(++nextVar);
+            solver.addClause(relaxed.push(nextVar));
+        }
+        int[] result = new int[relaxations.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = relaxations.get(i);
+        }
+        return result;
+    }
+
+    private static boolean isTautology(VecInt clause) {
+        for (int i = 0; i < clause.size(); i++) {
+            if (clause.contains(-clause.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * MSU3 for one tier. On return, the solver is constrained to the optimum of this tier.
+     * @param relaxations relaxation variables of the tier, see {@link #relax}
+     * @return minimum number of unsatisfied preferences of this tier
+     */
+    static int solveTier(ISolver solver, int[] relaxations) throws ContradictionException, TimeoutException {
+        boolean[] inCore = new boolean[relaxations.length];
+        List<Integer> relaxed = new ArrayList<>();
+        IConstr bound = null;
+        int cost = 0;
+        while (true) {
+            VecInt assumptions = new VecInt();
+            for (int i = 0; i < relaxations.length; i++) {
+                if (!inCore[i]) {
+                    assumptions.push(-relaxations[i]);
+                }
+            }
+            if (solver.isSatisfiable(assumptions)) {
+                // Lock the optimum of this tier before moving to the next one
+                for (int i = 0; i < assumptions.size(); i++) {
+                    solver.addClause(new VecInt(new int[]{assumptions.get(i)}));
+                }
+                return cost;
+            }
+            IVecInt core = solver.unsatExplanation();
+            if (core == null || core.size() == 0) {
+                if (assumptions.isEmpty()) {
+                    throw new SolverException("Preferences are unsatisfiable independent of assumptions");
+                }
+                // sat4j may give no explanation when an assumption is already false at the root level, through
+                // hard clauses and the optimum of heavier tiers. Relaxing a superset of the core keeps the cost a
+                // lower bound
+                core = assumptions;
+            }
+            int before = relaxed.size();
+            for (int i = 0; i < core.size(); i++) {
+                int var = Math.abs(core.get(i));
+                for (int j = 0; j < relaxations.length; j++) {
+                    if (relaxations[j] == var && !inCore[j]) {
+                        inCore[j] = true;
+                        relaxed.add(var);
+                    }
+                }
+            }
+            if (relaxed.size() == before) {
+                throw new SolverException("Unsat core doesn't contain preferences of the current tier");
+            }
+            cost++;
+            if (bound != null) {
+                solver.removeConstr(bound);
+            }
+            VecInt atMost = new VecInt();
+            for (int var : relaxed) {
+                atMost.push(var);
+            }
+            bound = solver.addAtMost(atMost, cost);
+        }
+    }
+
+    private Map<Integer, AnnotationMirror> decode(int[] model) {
+        int maxVar = 0;
+        for (int lit : model) {
+            maxVar = Math.max(maxVar, Math.abs(lit));
+        }
+        boolean[] isTrue = new boolean[maxVar + 1];
+        for (int lit : model) {
+            if (lit > 0) {
+                isTrue[lit] = true;
+            }
+        }
+        Map<Integer, AnnotationMirror> solutions = new HashMap<>();
+        for (Integer varSlotId : varSlotIds) {
+            AnnotationMirror solution = translator.decodeSlot(varSlotId, isTrue);
+            if (solution != null) {
+                solutions.put(varSlotId, solution);
+            }
+        }
+        return solutions;
+    }
+
+    static int maxVar(VecInt clause) {
+        int max = 0;
+        for (int i = 0; i < clause.size(); i++) {
+            max = Math.max(max, Math.abs(clause.get(i)));
+        }
+        return max;
+    }
+
+    private static void report(int weight, int size, int cost, long start) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.format("Preference tier weight %d: %d preferences, %d unsatisfied, %dms\n", weight, size, cost, millis);
+        PICOStatistics statistics = ((PICOInferenceChecker) InferenceMain.getInstance().getRealChecker()).getStatistics();
+        statistics.add("solver.tier." + weight + ".preferences", size);
+        statistics.add("solver.tier." + weight + ".cost", cost);
+        statistics.add("solver.tier." + weight + ".millis", millis);
+    }
+}
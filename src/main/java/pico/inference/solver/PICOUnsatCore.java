@@ -0,0 +1,115 @@
+package pico.inference.solver;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extracts a minimal set of clause groups that is unsatisfiable together with some background
+ * clauses. A group is what one source of clauses, i.e. one constraint or one slot domain, encodes to.
+ *
+ * Each group is gated by a selector variable and all selectors are passed as assumptions, so sat4j
+ * reports the groups it needed in its unsat explanation. That core is then shrunk by dropping one
+ * group at a time and keeping it out whenever the rest stays unsatisfiable.
+ */
+public class PICOUnsatCore {
+
+    private final List<List<VecInt>> groups = new ArrayList<>();
+
+    /**@return index of the group*/
+    public int addGroup(List<VecInt> clauses) {
+        groups.add(clauses);
+        return groups.size() - 1;
+    }
+
+    /**
+     * @param background clauses that are always enabled
+     * @param maxVar largest variable used by background and groups
+     * @return indices of a minimal unsatisfiable subset of groups in ascending order, empty if the
+     * background alone is unsatisfiable or every group together is satisfiable
+     */
+    public List<Integer> extract(List<VecInt> background, int maxVar) throws TimeoutException {
+        ISolver solver = SolverFactory.newDefault();
+        solver.setKeepSolverHot(true);
+        solver.newVar(maxVar + groups.size());
+        try {
+            for (VecInt clause : background) {
+                solver.addClause(clause);
+            }
+            for (int i = 0; i < groups.size(); i++) {
+                int selector = maxVar + 1 + i;
+                for (VecInt clause : groups.get(i)) {
+                    VecInt gated = new VecInt();
+                    clause.copyTo(gated);
+                    solver.addClause(gated.push(-selector));
+                }
+            }
+        } catch (ContradictionException e) {
+            // Gated clauses can't be contradictory, so it's the background
+            return new ArrayList<>();
+        }
+        if (!solver.isSatisfiable()) {
+            // Without assumptions sat4j has no explanation
+            return new ArrayList<>();
+        }
+
+        List<Integer> core = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            core.add(i);
+        }
+        core = explain(solver, core, maxVar);
+        if (core == null) {
+            return new ArrayList<>();
+        }
+        for (int i = 0; i < core.size(); ) {
+            List<Integer> without = new ArrayList<>(core);
+            without.remove(i);
+            List<Integer> smaller = explain(solver, without, maxVar);
+            if (smaller == null) {
+                // Group i is needed. Every unsatisfiable subset of the core contains it
+                i++;
+            } else {
+                // Groups before i are needed, so they are in smaller too. Keep the order of core
+                List<Integer> kept = new ArrayList<>();
+                for (Integer group : core) {
+                    if (smaller.contains(group)) {
+                        kept.add(group);
+                    }
+                }
+                core = kept;
+            }
+        }
+        return core;
+    }
+
+    /**@return groups of the unsat explanation when only groups are enabled, null if that's satisfiable*/
+    private static List<Integer> explain(ISolver solver, List<Integer> groups, int maxVar) throws TimeoutException {
+        VecInt assumptions = new VecInt();
+        for (Integer group : groups) {
+            assumptions.push(maxVar + 1 + group);
+        }
+        if (solver.isSatisfiable(assumptions)) {
+            return null;
+        }
+        IVecInt explanation = solver.unsatExplanation();
+        if (explanation == null || explanation.size() == 0) {
+            // sat4j may give no explanation when a selector is already false at the root level. All groups is
+            // still an unsatisfiable superset, extract shrinks it
+            return groups;
+        }
+        List<Integer> core = new ArrayList<>();
+        for (int i = 0; i < explanation.size(); i++) {
+            core.add(Math.abs(explanation.get(i)) - maxVar - 1);
+        }
+        // In the order the groups were added
+        Collections.sort(core);
+        return core;
+    }
+}
@@ -16,8 +16,17 @@ import java.util.Set;
  */
 public class PICOAnalysis extends CFAbstractAnalysis<PICOValue, PICOStore, PICOTransfer> {
 
+    /**Null unless option "printStatistics" is passed, so that values aren't counted for nothing*/
+    private final PICOStatistics statistics;
+
     public PICOAnalysis(BaseTypeChecker checker, PICOAnnotatedTypeFactory factory, List<Pair<VariableElement, PICOValue>> fieldValues) {
         super(checker, factory, fieldValues);
+        this.statistics = checker.hasOption("printStatistics") ? ((PICOChecker) checker).getStatistics() : null;
+    }
+
+    /**@return null unless option "printStatistics" is passed*/
+    public PICOStatistics getStatistics() {
+        return statistics;
     }
 
     @Override
@@ -35,6 +44,9 @@ public class PICOAnalysis extends CFAbstractAnalysis<PICOValue, PICOStore, PICOT
         if (!CFAbstractValue.validateSet(annotations, underlyingType, qualifierHierarchy)) {
             return null;
         }
+        if (statistics != null) {
+            statistics.increment("value.created");
+        }
         return new PICOValue(this, annotations, underlyingType);
     }
 }
@@ -11,14 +11,18 @@ import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeKind;
 
@@ -28,9 +32,12 @@ import org.checkerframework.checker.initialization.qual.Initialized;
 import org.checkerframework.checker.initialization.qual.UnderInitialization;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
 import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.dataflow.cfg.UnderlyingAST;
+import org.checkerframework.dataflow.cfg.UnderlyingAST.CFGMethod;
 import org.checkerframework.framework.qual.RelevantJavaTypes;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
 import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.framework.type.ViewpointAdapter;
@@ -51,8 +58,11 @@ import org.checkerframework.javacutil.TreeUtils;
 
 import com.sun.source.tree.BinaryTree;
 import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.LiteralTree;
 import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewArrayTree;
@@ -81,10 +91,91 @@ import qual.SubstitutablePolyMutable;
 public class PICOAnnotatedTypeFactory extends InitializationAnnotatedTypeFactory<PICOValue,
         PICOStore, PICOTransfer, PICOAnalysis> {
 
+    /**Summaries of other modules, consulted for their bytecode like stub files*/
+    private final List<PICOSummary> summaries;
+    /**Generated sources that are treated like bytecode*/
+    private final PICOTrustedCode trusted;
+    /**Whether to run dataflow on methods that PICOFlowPrescan says can't be refined*/
+    private final boolean fullFlow;
+    /**Types computed by getAnnotatedTypeLhs, which must not go to the tree cache*/
+    private final PICOLhsTypeCache lhsTypes;
+    /**
+     * Bounds of the classes used most. Unlike types of trees, they are needed again by later compilation
+     * units, so they aren't cleared in setRoot, but bounded by the option cacheSize like lhsTypes.
+     */
+    private final PICOCache<TypeElement, AnnotatedDeclaredType> classBounds;
+    /**Bounds computed before postInit() finished may still miss stub file annotations, so they aren't retained*/
+    private boolean retainClassBounds = false;
+
     public PICOAnnotatedTypeFactory(BaseTypeChecker checker) {
         super(checker, true);
+        summaries = PICOSummary.fromOptions(checker);
+        trusted = PICOTrustedCode.fromOptions(checker);
+        fullFlow = checker.hasOption("fullFlow");
+        PICOStatistics cacheStatistics = checker.hasOption("printStatistics") ?
+                ((PICOChecker) checker).getStatistics() : null;
+        lhsTypes = new PICOLhsTypeCache(PICOTypeUtil.getCacheSize(checker), cacheStatistics);
+        classBounds = new PICOCache<>(PICOTypeUtil.getCacheSize(checker), cacheStatistics, "class.bound.cache");
         postInit();
         addAliasedAnnotation(org.jmlspecs.annotation.Readonly.class, READONLY);
+        retainClassBounds = true;
+    }
+
+    /**
+     * Bound of a class, see {@link PICOTypeUtil#getBoundTypeOfTypeDeclaration(TypeElement, AnnotatedTypeFactory)}.
+     * It's computed once while it stays in classBounds. Only that method goes through here, other lookups of
+     * the type of a class element are left to the framework.
+     */
+    public AnnotatedDeclaredType getClassBound(TypeElement elt) {
+        if (!retainClassBounds) {
+            return getAnnotatedType(elt);
+        }
+        AnnotatedDeclaredType bound = classBounds.get(elt);
+        if (bound == null) {
+            bound = getAnnotatedType(elt);
+            classBounds.put(elt, bound);
+        }
+        return bound.deepCopy();
+    }
+
+    /**Types of trees of the previous compilation unit are released, class bounds are kept*/
+    @Override
+    public void setRoot(CompilationUnitTree root) {
+        lhsTypes.clear();
+        super.setRoot(root);
+    }
+
+    /**
+     * Methods whose body can't be refined by dataflow are not analyzed: their trees have no flow
+     * value and get the declared and defaulted types, which is what the fixpoint would have computed.
+     * Reading a final field in fieldValues counts as refining, dataflow starts with its initializer value.
+     */
+    @Override
+    protected void analyze(Queue<ClassTree> queue, Queue<Pair<LambdaExpressionTree, PICOStore>> lambdaQueue,
+                           UnderlyingAST ast, List<Pair<VariableElement, PICOValue>> fieldValues, ClassTree currentClass,
+                           boolean isInitializationCode, boolean updateInitializationStore, boolean isStatic,
+                           PICOStore capturedStore) {
+        PICOStatistics statistics = ((PICOChecker) checker).getStatistics();
+        if (!fullFlow && ast.getKind() == UnderlyingAST.Kind.METHOD
+                && !PICOFlowPrescan.mayRefine(((CFGMethod) ast).getMethod(), initializedFields(fieldValues))) {
+            statistics.increment("flow.skipped.methods");
+            return;
+        }
+        long start = System.nanoTime();
+        super.analyze(queue, lambdaQueue, ast, fieldValues, currentClass, isInitializationCode,
+                updateInitializationStore, isStatic, capturedStore);
+        if (ast.getKind() == UnderlyingAST.Kind.METHOD) {
+            statistics.increment("flow.analyzed.methods");
+            statistics.addTime("flow.analyzed.methods.nanos", start);
+        }
+    }
+
+    private static Set<VariableElement> initializedFields(List<Pair<VariableElement, PICOValue>> fieldValues) {
+        Set<VariableElement> fields = new HashSet<>();
+        for (Pair<VariableElement, PICOValue> fieldValue : fieldValues) {
+            fields.add(fieldValue.first);
+        }
+        return fields;
     }
 
     @Override
@@ -179,6 +270,11 @@ public class PICOAnnotatedTypeFactory extends InitializationAnnotatedTypeFactory
      * applying @Immutable on type declaration to constructor return type).*/
     @Override
     public void addComputedTypeAnnotations(Element elt, AnnotatedTypeMirror type) {
+        if (!summaries.isEmpty() && (ElementUtils.isElementFromByteCode(elt) || trusted.isTrusted(elt))) {
+            for (PICOSummary summary : summaries) {
+                summary.apply(elt, type, this);
+            }
+        }
         PICOTypeUtil.addDefaultForField(this, type, elt);
         PICOTypeUtil.defaultConstructorReturnToClassBound(this, elt, type);
         PICOTypeUtil.applyImmutableToEnumAndEnumConstant(type);
@@ -207,10 +303,17 @@ public class PICOAnnotatedTypeFactory extends InitializationAnnotatedTypeFactory
         boolean oldComputingAnnotatedTypeMirrorOfLHS = computingAnnotatedTypeMirrorOfLHS;
         computingAnnotatedTypeMirrorOfLHS = true;
 
-        AnnotatedTypeMirror result = null;
+        // Keyed by the flow value as well, so that a type computed before dataflow refined the tree isn't reused after
+        PICOValue flowValue = flowResult == null ? null : getInferredValueFor(lhsTree);
+        AnnotatedTypeMirror result = lhsTypes.get(lhsTree, flowValue);
+        if (result != null) {
+            computingAnnotatedTypeMirrorOfLHS = oldComputingAnnotatedTypeMirrorOfLHS;
+            return result;
+        }
         boolean oldShouldCache = shouldCache;
         // Don't cache the result because getAnnotatedType(lhsTree) could
         // be called from elsewhere and would expect flow-sensitive type refinements.
+        // It goes to lhsTypes instead.
         shouldCache = false;
         switch (lhsTree.getKind()) {
             case VARIABLE:
@@ -233,6 +336,7 @@ public class PICOAnnotatedTypeFactory extends InitializationAnnotatedTypeFactory
                 }
         }
         shouldCache = oldShouldCache;
+        lhsTypes.put(lhsTree, flowValue, result);
 
         computingAnnotatedTypeMirrorOfLHS = oldComputingAnnotatedTypeMirrorOfLHS;
         return result;
@@ -290,6 +394,36 @@ public class PICOAnnotatedTypeFactory extends InitializationAnnotatedTypeFactory
             super(atypeFactory);
         }
 
+        /**
+         * Generated array literals can have tens of thousands of elements. Type of a literal only
+         * depends on its kind, so it's computed once per kind, and the bound is only recomputed
+         * for elements that aren't already below it.
+         */
+        private Collection<? extends AnnotationMirror> getLubOfInitializers(List<? extends ExpressionTree> initializers) {
+            QualifierHierarchy hierarchy = atypeFactory.getQualifierHierarchy();
+            Map<Tree.Kind, Collection<AnnotationMirror>> literals = new EnumMap<>(Tree.Kind.class);
+            Collection<? extends AnnotationMirror> lub = null;
+            for (ExpressionTree init : initializers) {
+                Collection<AnnotationMirror> annos;
+                if (init instanceof LiteralTree && init.getKind() != Tree.Kind.NULL_LITERAL) {
+                    annos = literals.get(init.getKind());
+                    if (annos == null) {
+                        annos = atypeFactory.getAnnotatedType(init).getEffectiveAnnotations();
+                        literals.put(init.getKind(), annos);
+                    }
+                } else {
+                    // initType might be a typeVariable, so use effectiveAnnotations.
+                    annos = atypeFactory.getAnnotatedType(init).getEffectiveAnnotations();
+                }
+                if (lub == null) {
+                    lub = annos;
+                } else if (annos != lub && !hierarchy.isSubtype(annos, lub)) {
+                    lub = hierarchy.leastUpperBounds(lub, annos);
+                }
+            }
+            return lub;
+        }
+
         // TODO This is very ugly. Why is array component type from lhs propagates to rhs?!
         @Override
         public Void visitNewArray(NewArrayTree tree, AnnotatedTypeMirror type) {
@@ -299,17 +433,20 @@ public class PICOAnnotatedTypeFactory extends InitializationAnnotatedTypeFactory
 
             AnnotatedTypeMirror componentType = ((AnnotatedTypeMirror.AnnotatedArrayType) type).getComponentType();
 
+            if (PICOTypeUtil.isImplicitlyImmutableType(componentType)) {
+                // Elements are @Immutable whatever the initializers and the context are, so neither is looked at.
+                // Values of these types are always initialized
+                applyImmutableIfImplicitlyImmutable(componentType);
+                if (atypeFactory.isSupportedQualifier(COMMITED)) {
+                    componentType.addMissingAnnotations(new HashSet<>(Arrays.asList(COMMITED)));
+                }
+                return null;
+            }
+
             Collection<? extends AnnotationMirror> prev = null;
             if (tree.getInitializers() != null && tree.getInitializers().size() != 0) {
                 // We have initializers, either with or without an array type.
-
-                for (ExpressionTree init : tree.getInitializers()) {
-                    AnnotatedTypeMirror initType = atypeFactory.getAnnotatedType(init);
-                    // initType might be a typeVariable, so use effectiveAnnotations.
-                    Collection<AnnotationMirror> annos = initType.getEffectiveAnnotations();
-
-                    prev = (prev == null) ? annos : atypeFactory.getQualifierHierarchy().leastUpperBounds(prev, annos);
-                }
+                prev = getLubOfInitializers(tree.getInitializers());
             } else {
                 prev = componentType.getAnnotations();
             }
@@ -369,7 +506,12 @@ public class PICOAnnotatedTypeFactory extends InitializationAnnotatedTypeFactory
         @Override
         public Void visitBinary(BinaryTree node, AnnotatedTypeMirror type) {
             applyImmutableIfImplicitlyImmutable(type);// Usually there isn't existing annotation on binary trees, but to be safe, run it first
-            super.visitBinary(node, type);
+            // Binary trees are always primitives or String. Then mutability is already decided and initialization is
+            // replaced below, so super would only compute the operand types(recursively down a long a + b + c + ...
+            // chain) for nothing.
+            if (!PICOTypeUtil.isImplicitlyImmutableType(type)) {
+                super.visitBinary(node, type);
+            }
             // NullnessPropagationTreeAnnotator says result type of binary tree is always @Initialized. So replace it
             // with COMMITED here.
             applyCommitedIfSupported(atypeFactory, type);
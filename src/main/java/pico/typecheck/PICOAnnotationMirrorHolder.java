@@ -40,4 +40,13 @@ public class PICOAnnotationMirrorHolder {
 
         COMMITED = AnnotationBuilder.fromClass(elements, Initialized.class);
     }
+
+    /**
+     * Qualifiers a VariableSlot can take in PICOInfer, i.e. the mutability qualifiers without the polymorphic
+     * ones. Binary files of PICO(slot domains, checkpoints and summaries) refer to qualifiers by index in this
+     * array or an extension of it.
+     */
+    public static AnnotationMirror[] inferableQualifiers() {
+        return new AnnotationMirror[]{READONLY, MUTABLE, RECEIVER_DEPENDANT_MUTABLE, IMMUTABLE, BOTTOM};
+    }
 }
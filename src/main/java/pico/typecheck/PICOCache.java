@@ -0,0 +1,88 @@
+package pico.typecheck;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-limited cache whose eviction respects access frequency(segmented LRU). New entries start on
+ * probation and are moved to the protected segment when they are hit again. Entries are evicted from
+ * probation first, so a burst of types that are used once, e.g. while checking a long method,
+ * doesn't push out the ones that are looked up over and over.
+ *
+ * Hits and misses are counted in statistics as name + ".hits" and name + ".misses", unless statistics
+ * is null, which is what the factories pass when -AprintStatistics isn't given.
+ */
+public class PICOCache<K, V> {
+
+    private final int capacity;
+    private final int protectedCapacity;
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final PICOStatistics statistics;
+    private final String hitsKey;
+    private final String missesKey;
+
+    public PICOCache(int capacity, PICOStatistics statistics, String name) {
+        this.capacity = Math.max(capacity, 1);
+        // Same split as the caches of the SLRU literature: most of the space for entries used more than once
+        this.protectedCapacity = this.capacity * 4 / 5;
+        this.statistics = statistics;
+        this.hitsKey = name + ".hits";
+        this.missesKey = name + ".misses";
+    }
+
+    /**@return the cached value, or null if there is none*/
+    public V get(K key) {
+        V value = protectedSegment.get(key);
+        if (value == null) {
+            value = probation.remove(key);
+            if (value != null) {
+                promote(key, value);
+            }
+        }
+        if (statistics != null) {
+            statistics.increment(value == null ? missesKey : hitsKey);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, value);
+            return;
+        }
+        probation.put(key, value);
+        evict();
+    }
+
+    private void promote(K key, V value) {
+        protectedSegment.put(key, value);
+        if (protectedSegment.size() > protectedCapacity) {
+            // Demote the least recently used protected entry, it gets another chance on probation
+            Iterator<Map.Entry<K, V>> eldest = protectedSegment.entrySet().iterator();
+            Map.Entry<K, V> demoted = eldest.next();
+            eldest.remove();
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+        evict();
+    }
+
+    private void evict() {
+        while (probation.size() + protectedSegment.size() > capacity) {
+            LinkedHashMap<K, V> segment = probation.isEmpty() ? protectedSegment : probation;
+            Iterator<K> eldest = segment.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    public void clear() {
+        probation.clear();
+        protectedSegment.clear();
+    }
+}
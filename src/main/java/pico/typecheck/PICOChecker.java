@@ -3,16 +3,24 @@ package pico.typecheck;
 import org.checkerframework.checker.initialization.InitializationChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
 import org.checkerframework.framework.source.SupportedOptions;
+import org.checkerframework.javacutil.ElementUtils;
 
+import java.io.File;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.TreeMap;
+
+import javax.lang.model.element.ExecutableElement;
 
 /**
  * Created by mier on 20/06/17.
  */
-@SupportedOptions({"printFbcErrors"})
+@SupportedOptions({"printFbcErrors", PICOSummary.SUMMARY_OUT, PICOSummary.SUMMARIES, "printStatistics", "fullFlow",
+        "cacheSize", PICOTrustedCode.TRUSTED_PACKAGES})
 public class PICOChecker extends InitializationChecker {
 
+    private final PICOStatistics statistics = new PICOStatistics();
+
     public PICOChecker() {
         super(true);
     }
@@ -23,6 +31,10 @@ public class PICOChecker extends InitializationChecker {
         PICOAnnotationMirrorHolder.init(this);
     }
 
+    public PICOStatistics getStatistics() {
+        return statistics;
+    }
+
     @Override
     protected BaseTypeVisitor<?> createSourceVisitor() {
         return new PICOVisitor(this);
@@ -30,7 +42,8 @@ public class PICOChecker extends InitializationChecker {
 
     @Override
     protected boolean shouldAddShutdownHook() {
-        return hasOption("printFbcErrors") || super.shouldAddShutdownHook();
+        return hasOption("printFbcErrors") || hasOption(PICOSummary.SUMMARY_OUT) || hasOption("printStatistics")
+                || super.shouldAddShutdownHook();
     }
 
     @Override
@@ -39,16 +52,36 @@ public class PICOChecker extends InitializationChecker {
         if (hasOption("printFbcErrors")) {
             printFbcViolatedMethods();
         }
+        if (hasOption("printStatistics")) {
+            printStatistics();
+        }
+        if (hasOption(PICOSummary.SUMMARY_OUT)) {
+            ((PICOVisitor) visitor).summary.write(new File(getOption(PICOSummary.SUMMARY_OUT)));
+        }
+    }
+
+    private void printStatistics() {
+        long analyzed = statistics.get("flow.analyzed.methods");
+        if (analyzed > 0) {
+            // Skipped methods weren't timed, so assume they would have cost as much as an average analyzed one
+            long average = statistics.get("flow.analyzed.methods.nanos") / analyzed;
+            statistics.add("flow.estimated.saved.millis", statistics.get("flow.skipped.methods") * average / 1_000_000);
+        }
+        statistics.print(System.out, "PICO Statistics");
     }
 
     private void printFbcViolatedMethods() {
-        Set<Entry<String, Integer>> entries = ((PICOVisitor) visitor).fbcViolatedMethods.entrySet();
+        // Keys are only rendered here, sorted so that the output doesn't depend on element hashing
+        Map<String, Integer> entries = new TreeMap<>();
+        for (Entry<ExecutableElement, Integer> e : ((PICOVisitor) visitor).fbcViolatedMethods.entrySet()) {
+            entries.put(ElementUtils.enclosingClass(e.getKey()) + "#" + e.getKey(), e.getValue());
+        }
         if (entries.isEmpty()) {
             System.out.println("\n=============== Congrats! No Fbc Violations Found. ===============\n");
         } else {
             System.out.println("\n===================== Fbc Violations Found! ======================");
             System.out.format("%30s%30s\n", "Method", "Violated Times");
-            for (Entry<String, Integer> e : entries) {
+            for (Entry<String, Integer> e : entries.entrySet()) {
                 System.out.format("%30s%30s\n", e.getKey(), e.getValue());
             }
             System.out.println("====================================================================\n");
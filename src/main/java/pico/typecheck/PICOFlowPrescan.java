@@ -0,0 +1,145 @@
+package pico.typecheck;
+
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+
+import org.checkerframework.javacutil.TreeUtils;
+
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Decides before running dataflow whether it can refine anything in a method body. Dataflow only
+ * refines PICO and initialization qualifiers of reference typed values through assignments
+ * (including local variable initializers, loop variables and null) and reference comparisons, and
+ * starts every method with the values of final fields with initializers. A method without any of
+ * them gets exactly the declared and defaulted types from dataflow, so it doesn't need a fixpoint.
+ *
+ * This is conservative: primitives are the only values treated as never refined, and any nested
+ * class or lambda requires dataflow, as dataflow is what discovers and analyzes them.
+ */
+public class PICOFlowPrescan extends TreeScanner<Boolean, Set<? extends Element>> {
+
+    private static final PICOFlowPrescan INSTANCE = new PICOFlowPrescan();
+
+    /**
+     * @param initializedFields final fields whose initializer values dataflow starts method with
+     * @return false if running dataflow on method can't give any type different from the
+     * non-flow-sensitive one
+     */
+    public static boolean mayRefine(MethodTree method, Set<? extends Element> initializedFields) {
+        if (method.getBody() == null) {
+            return false;
+        }
+        if (TreeUtils.isConstructor(method) || method.getReceiverParameter() != null) {
+            // Initialization state of the receiver is tracked by dataflow
+            return true;
+        }
+        return Boolean.TRUE.equals(INSTANCE.scan(method.getBody(), initializedFields));
+    }
+
+    @Override
+    public Boolean reduce(Boolean r1, Boolean r2) {
+        return Boolean.TRUE.equals(r1) || Boolean.TRUE.equals(r2);
+    }
+
+    private static boolean isPrimitive(TypeMirror type) {
+        return type != null && type.getKind().isPrimitive();
+    }
+
+    private static boolean isPrimitive(Tree tree) {
+        return isPrimitive(TreeUtils.typeOf(tree));
+    }
+
+    @Override
+    public Boolean visitAssignment(AssignmentTree node, Set<? extends Element> p) {
+        return !isPrimitive(node.getVariable()) || super.visitAssignment(node, p);
+    }
+
+    @Override
+    public Boolean visitCompoundAssignment(CompoundAssignmentTree node, Set<? extends Element> p) {
+        return !isPrimitive(node.getVariable()) || super.visitCompoundAssignment(node, p);
+    }
+
+    @Override
+    public Boolean visitUnary(UnaryTree node, Set<? extends Element> p) {
+        switch (node.getKind()) {
+            case PREFIX_INCREMENT:
+            case PREFIX_DECREMENT:
+            case POSTFIX_INCREMENT:
+            case POSTFIX_DECREMENT:
+                if (!isPrimitive(node.getExpression())) {
+                    // Boxed types
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        return super.visitUnary(node, p);
+    }
+
+    @Override
+    public Boolean visitVariable(VariableTree node, Set<? extends Element> p) {
+        VariableElement element = TreeUtils.elementFromDeclaration(node);
+        if (node.getInitializer() != null && (element == null || !isPrimitive(element.asType()))) {
+            return true;
+        }
+        return super.visitVariable(node, p);
+    }
+
+    @Override
+    public Boolean visitEnhancedForLoop(EnhancedForLoopTree node, Set<? extends Element> p) {
+        VariableElement element = TreeUtils.elementFromDeclaration(node.getVariable());
+        if (element == null || !isPrimitive(element.asType())) {
+            // Loop variable is assigned every iteration
+            return true;
+        }
+        return super.visitEnhancedForLoop(node, p);
+    }
+
+    @Override
+    public Boolean visitBinary(BinaryTree node, Set<? extends Element> p) {
+        if ((node.getKind() == Tree.Kind.EQUAL_TO || node.getKind() == Tree.Kind.NOT_EQUAL_TO)
+                && (!isPrimitive(node.getLeftOperand()) || !isPrimitive(node.getRightOperand()))) {
+            return true;
+        }
+        return super.visitBinary(node, p);
+    }
+
+    @Override
+    public Boolean visitIdentifier(IdentifierTree node, Set<? extends Element> p) {
+        // Reads of the field get the value of its initializer
+        return p.contains(TreeUtils.elementFromUse(node)) || super.visitIdentifier(node, p);
+    }
+
+    @Override
+    public Boolean visitMemberSelect(MemberSelectTree node, Set<? extends Element> p) {
+        return p.contains(TreeUtils.elementFromUse(node)) || super.visitMemberSelect(node, p);
+    }
+
+    @Override
+    public Boolean visitClass(ClassTree node, Set<? extends Element> p) {
+        // Covers anonymous classes, whose class body is a ClassTree of the new class tree
+        return true;
+    }
+
+    @Override
+    public Boolean visitLambdaExpression(LambdaExpressionTree node, Set<? extends Element> p) {
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+package pico.typecheck;
+
+import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.javacutil.Pair;
+
+import com.sun.source.tree.Tree;
+
+/**
+ * Types of assignment targets as computed by getAnnotatedTypeLhs. They can't go to the tree cache of
+ * the factory, because getAnnotatedType(tree) of the same tree elsewhere expects the flow-sensitive
+ * type, so they are cached here, separately, in a {@link PICOCache}.
+ *
+ * An entry is keyed by the tree and the flow value the factory had for it when the type was computed.
+ * Once dataflow refines the tree differently, the key changes and the type is computed again.
+ * Hits and misses are counted in "lhs.cache.hits" and "lhs.cache.misses" if statistics isn't null.
+ * Trees of a compilation unit are never looked up again once the factory moved on to the next one,
+ * so the factory clears the cache then.
+ */
+public class PICOLhsTypeCache {
+
+    /**Same as the default size of the caches of AnnotatedTypeFactory*/
+    public static final int DEFAULT_CAPACITY = 300;
+
+    private final PICOCache<Pair<Tree, Object>, AnnotatedTypeMirror> cache;
+
+    public PICOLhsTypeCache(int capacity, PICOStatistics statistics) {
+        this.cache = new PICOCache<>(capacity, statistics, "lhs.cache");
+    }
+
+    /**
+     * @param flowValue flow value the factory has for tree right now, null if there is none
+     * @return copy of the cached type, or null if it isn't cached
+     */
+    public AnnotatedTypeMirror get(Tree tree, Object flowValue) {
+        AnnotatedTypeMirror type = cache.get(Pair.of(tree, flowValue));
+        return type == null ? null : type.deepCopy();
+    }
+
+    public void put(Tree tree, Object flowValue, AnnotatedTypeMirror type) {
+        cache.put(Pair.of(tree, flowValue), type.deepCopy());
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,176 @@
+package pico.typecheck;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Modifier;
+
+import org.checkerframework.javacutil.TreeUtils;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+
+/**
+ * Scope information of the tree a visitor is currently at, maintained while the visitor descends
+ * instead of walking the TreePath upwards for every query. Visitors push in scan(Tree) and pop when
+ * it returns; see {@link PICOVisitor#scan(Tree, Void)}.
+ *
+ * Answers are the same as {@link PICOTypeUtil#inStaticScope(TreePath)} and
+ * {@link TreeUtils#enclosingClass(TreePath)} on the current path. When the visitor started in the
+ * middle of a compilation unit, the frames of the trees above the start are replayed from the path
+ * once.
+ */
+public class PICOScopeStack {
+
+    private static class Frame {
+        final Tree tree;
+        /**Static-ness of the nearest enclosing method, null if there is none*/
+        final Boolean method;
+        /**Static-ness of the enclosing member of the nearest class if that member is a block(initializer), else null*/
+        final Boolean initializer;
+        /**Static-ness of the nearest enclosing variable, null if there is none*/
+        final Boolean variable;
+        final ClassTree enclosingClass;
+
+        Frame(Tree tree, Boolean method, Boolean initializer, Boolean variable, ClassTree enclosingClass) {
+            this.tree = tree;
+            this.method = method;
+            this.initializer = initializer;
+            this.variable = variable;
+            this.enclosingClass = enclosingClass;
+        }
+    }
+
+    private static final Frame ROOT = new Frame(null, null, null, null, null);
+
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    /**Number of frames at the bottom that were replayed by seed(TreePath)*/
+    private int seeded = 0;
+
+    /**
+     * Called before the visitor descends into tree.
+     *
+     * @param parentPath current path of the visitor, i.e. the path of tree's parent
+     * @return whether a frame was pushed. Only then {@link #pop()} must be called afterwards.
+     */
+    public boolean push(Tree tree, TreePath parentPath) {
+        if (tree == null || parentPath == null) {
+            return false;
+        }
+        if (frames.isEmpty()) {
+            seed(parentPath);
+        }
+        Frame frame = next(frames.isEmpty() ? ROOT : frames.peek(), tree, parentPath.getLeaf());
+        if (frame == null) {
+            return false;
+        }
+        frames.push(frame);
+        return true;
+    }
+
+    public void pop() {
+        frames.pop();
+        if (frames.size() == seeded) {
+            // Back where the visitor started. The next visit may start somewhere else, so replay again.
+            frames.clear();
+            seeded = 0;
+        }
+    }
+
+    /**Replays the trees from the compilation unit down to the start of the visitor*/
+    private void seed(TreePath path) {
+        List<TreePath> ancestors = new ArrayList<>();
+        for (TreePath p = path; p != null; p = p.getParentPath()) {
+            ancestors.add(p);
+        }
+        Collections.reverse(ancestors);
+        Frame top = ROOT;
+        for (TreePath p : ancestors) {
+            Frame frame = next(top, p.getLeaf(), p.getParentPath() == null ? null : p.getParentPath().getLeaf());
+            if (frame != null) {
+                frames.push(frame);
+                top = frame;
+            }
+        }
+        seeded = frames.size();
+    }
+
+    /**@return frame of tree, or null if tree doesn't change any scope information*/
+    private static Frame next(Frame top, Tree tree, Tree parent) {
+        boolean isMember = parent != null && TreeUtils.isClassTree(parent);
+        switch (tree.getKind()) {
+            case METHOD:
+                return new Frame(tree, isStatic(((MethodTree) tree).getModifiers().getFlags()),
+                        isMember ? null : top.initializer, top.variable, top.enclosingClass);
+            case VARIABLE:
+                return new Frame(tree, top.method, isMember ? null : top.initializer,
+                        isStatic(((VariableTree) tree).getModifiers().getFlags()), top.enclosingClass);
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                return new Frame(tree, top.method, isMember ? null : top.initializer, top.variable, (ClassTree) tree);
+            case BLOCK:
+                if (isMember) {
+                    return new Frame(tree, top.method, ((BlockTree) tree).isStatic(), top.variable, top.enclosingClass);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static Boolean isStatic(Set<Modifier> flags) {
+        return flags.contains(Modifier.STATIC);
+    }
+
+    /**
+     * Whether the frames describe the leaf of path. Otherwise, e.g. at the top-level class the visitor
+     * was started at, queries fall back to walking the path.
+     */
+    private boolean isAt(TreePath path) {
+        return !frames.isEmpty() && path != null && isOwnedBy(path.getLeaf());
+    }
+
+    /**Leaf that isn't a scope tree is covered by the frame of its nearest scope ancestor*/
+    private boolean isOwnedBy(Tree leaf) {
+        Frame top = frames.peek();
+        return top.tree == leaf || next(top, leaf, null) == null;
+    }
+
+    /**Same as {@link PICOTypeUtil#inStaticScope(TreePath)} for the current path of the visitor*/
+    public boolean inStaticScope(TreePath currentPath) {
+        if (!isAt(currentPath)) {
+            return PICOTypeUtil.inStaticScope(currentPath);
+        }
+        Frame top = frames.peek();
+        boolean in;
+        if (top.method != null) {
+            in = top.method;
+        } else if (top.initializer != null) {
+            in = top.initializer;
+        } else if (top.variable != null) {
+            in = top.variable;
+        } else {
+            in = false;
+        }
+        // Exclude case in which enclosing class is static
+        return in && !(top.enclosingClass != null
+                && top.enclosingClass.getModifiers().getFlags().contains(Modifier.STATIC));
+    }
+
+    /**Same as {@link TreeUtils#enclosingClass(TreePath)} for the current path of the visitor*/
+    public ClassTree enclosingClass(TreePath currentPath) {
+        if (!isAt(currentPath)) {
+            return TreeUtils.enclosingClass(currentPath);
+        }
+        return frames.peek().enclosingClass;
+    }
+}
@@ -0,0 +1,47 @@
+package pico.typecheck;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters collected while checking one module(one javac invocation), printed at the end
+ * with option "printStatistics". Keys are dotted names grouped by the part before the first dot,
+ * e.g. "flow.skipped.methods".
+ */
+public class PICOStatistics {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    public void increment(String key) {
+        add(key, 1);
+    }
+
+    public void add(String key, long value) {
+        counters.computeIfAbsent(key, k -> new LongAdder()).add(value);
+    }
+
+    public long get(String key) {
+        LongAdder counter = counters.get(key);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**Elapsed nanoseconds since start are added to key*/
+    public void addTime(String key, long startNanos) {
+        add(key, System.nanoTime() - startNanos);
+    }
+
+    public void print(PrintStream out, String title) {
+        Map<String, Long> sorted = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            sorted.put(e.getKey(), e.getValue().sum());
+        }
+        out.println("\n===================== " + title + " ======================");
+        for (Map.Entry<String, Long> e : sorted.entrySet()) {
+            out.format("%40s%30s\n", e.getKey(), e.getValue());
+        }
+        out.println("====================================================================\n");
+    }
+}
@@ -0,0 +1,300 @@
+package pico.typecheck;
+
+import static pico.typecheck.PICOAnnotationMirrorHolder.POLY_MUTABLE;
+import static pico.typecheck.PICOAnnotationMirrorHolder.READONLY;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.Types;
+
+import org.checkerframework.framework.source.SourceChecker;
+import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.UserError;
+
+/**
+ * Per-module summary of the immutability qualifiers of class bounds, fields and method
+ * receivers/returns/parameters. A module that was typechecked or inferred emits one(option
+ * "summaryOut"), and modules depending on it load it(option "summaries") instead of falling back to
+ * conservative defaults for its bytecode. Summaries are consulted like stub files: only locations
+ * that aren't already annotated are filled.
+ *
+ * <p>File layout: magic, version, a table of qualifier names, then one entry per class or member:
+ * the key as length-prefixed UTF-8 and its qualifiers as one table index each(or {@link #NONE}).
+ * Keys are "pkg.Cls" for class bounds, "pkg.Cls#field" for fields and "pkg.Cls#name(erasure,...)"
+ * for methods, whose qualifiers are receiver, return and then parameters. Loading maps the file
+ * and decodes every key into an index of entry offsets; qualifiers are only decoded on lookup.
+ */
+public class PICOSummary {
+
+    public static final String SUMMARY_OUT = "summaryOut";
+    public static final String SUMMARIES = "summaries";
+
+    /**"PSUM"*/
+    private static final int MAGIC = 0x5053554D;
+    public static final int VERSION = 1;
+    private static final byte NONE = -1;
+
+    private final MappedByteBuffer buffer;
+    private final AnnotationMirror[] qualifiers;
+    /**Key -> offset of the qualifier count of the entry*/
+    private final Map<String, Integer> offsets = new HashMap<>();
+
+    private PICOSummary(MappedByteBuffer buffer, AnnotationMirror[] qualifiers) {
+        this.buffer = buffer;
+        this.qualifiers = qualifiers;
+    }
+
+    /**The qualifiers of slots, and @PolyMutable, which summaries of typechecked modules can have*/
+    private static AnnotationMirror[] qualifiers() {
+        AnnotationMirror[] inferable = PICOAnnotationMirrorHolder.inferableQualifiers();
+        AnnotationMirror[] qualifiers = Arrays.copyOf(inferable, inferable.length + 1);
+        qualifiers[inferable.length] = POLY_MUTABLE;
+        return qualifiers;
+    }
+
+    /**
+     * Loads the summaries given by option {@link #SUMMARIES}, a {@link File#pathSeparator} separated
+     * list of files. They are returned in the order they should be consulted: later files win for
+     * keys that appear more than once.
+     */
+    public static List<PICOSummary> fromOptions(SourceChecker checker) {
+        String files = checker.getOption(SUMMARIES);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<PICOSummary> summaries = new ArrayList<>();
+        for (String file : files.split(File.pathSeparator)) {
+            if (!file.isEmpty()) {
+                summaries.add(0, load(new File(file)));
+            }
+        }
+        return summaries;
+    }
+
+    public static PICOSummary load(File file) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+            throw new UserError("Not a PICO summary: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new UserError("PICO summary " + file + " has version " + version + ", expected " + VERSION
+                    + ". Write it again with option " + SUMMARY_OUT);
+        }
+        AnnotationMirror[] known = qualifiers();
+        AnnotationMirror[] table = new AnnotationMirror[buffer.get()];
+        for (int i = 0; i < table.length; i++) {
+            String name = readString(buffer);
+            for (AnnotationMirror qualifier : known) {
+                if (AnnotationUtils.annotationName(qualifier).equals(name)) {
+                    table[i] = qualifier;
+                }
+            }
+        }
+        PICOSummary summary = new PICOSummary(buffer, table);
+        int entries = buffer.getInt();
+        for (int i = 0; i < entries; i++) {
+            String key = readString(buffer);
+            summary.offsets.put(key, buffer.position());
+            buffer.position(buffer.position() + 1 + (buffer.get(buffer.position()) & 0xFF));
+        }
+        return summary;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**@return qualifier at index of the entry of key, or null if there is none*/
+    private AnnotationMirror lookup(String key, int index) {
+        Integer offset = offsets.get(key);
+        if (offset == null || index >= (buffer.get(offset) & 0xFF)) {
+            return null;
+        }
+        byte code = buffer.get(offset + 1 + index);
+        return code == NONE || code >= qualifiers.length ? null : qualifiers[code];
+    }
+
+    public AnnotationMirror getClassBound(TypeElement element) {
+        return lookup(element.getQualifiedName().toString(), 0);
+    }
+
+    /**
+     * Fills the unannotated locations of type, the type of bytecode element elt, with qualifiers
+     * from the summary. Qualifiers the factory doesn't support are skipped.
+     */
+    public void apply(Element elt, AnnotatedTypeMirror type, AnnotatedTypeFactory factory) {
+        switch (elt.getKind()) {
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                fill(type, getClassBound((TypeElement) elt), factory);
+                break;
+            case FIELD:
+            case ENUM_CONSTANT:
+                fill(type, lookup(fieldKey((VariableElement) elt), 0), factory);
+                break;
+            case METHOD:
+            case CONSTRUCTOR:
+                if (!(type instanceof AnnotatedExecutableType)) {
+                    break;
+                }
+                AnnotatedExecutableType method = (AnnotatedExecutableType) type;
+                String key = methodKey((ExecutableElement) elt, factory.getProcessingEnv().getTypeUtils());
+                if (!offsets.containsKey(key)) {
+                    break;
+                }
+                if (method.getReceiverType() != null) {
+                    fill(method.getReceiverType(), lookup(key, 0), factory);
+                }
+                fill(method.getReturnType(), lookup(key, 1), factory);
+                List<AnnotatedTypeMirror> parameters = method.getParameterTypes();
+                for (int i = 0; i < parameters.size(); i++) {
+                    fill(parameters.get(i), lookup(key, i + 2), factory);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void fill(AnnotatedTypeMirror type, AnnotationMirror qualifier, AnnotatedTypeFactory factory) {
+        if (qualifier != null && !type.isAnnotatedInHierarchy(READONLY) && factory.isSupportedQualifier(qualifier)) {
+            type.addAnnotation(qualifier);
+        }
+    }
+
+    private static String fieldKey(VariableElement field) {
+        return ((TypeElement) field.getEnclosingElement()).getQualifiedName() + "#" + field.getSimpleName();
+    }
+
+    private static String methodKey(ExecutableElement method, Types types) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(((TypeElement) method.getEnclosingElement()).getQualifiedName())
+                .append('#').append(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(types.erasure(parameters.get(i).asType()));
+        }
+        return sb.append(')').toString();
+    }
+
+    /**Collects the summary of a module class by class, as seen by a factory that has checked or inferred it*/
+    public static class Builder {
+        private final AnnotationMirror[] qualifiers = qualifiers();
+        /**Sorted, so that the same module always produces the same file*/
+        private final Map<String, byte[]> entries = new TreeMap<>();
+
+        /**Records the bound and the non-private fields and methods of class element*/
+        public void addClass(TypeElement element, AnnotatedTypeFactory factory) {
+            entries.put(element.getQualifiedName().toString(),
+                    new byte[]{encode(PICOTypeUtil.getBoundTypeOfTypeDeclaration(element, factory))});
+            Types types = factory.getProcessingEnv().getTypeUtils();
+            for (Element member : element.getEnclosedElements()) {
+                if (member.getModifiers().contains(Modifier.PRIVATE)) {
+                    continue;
+                }
+                switch (member.getKind()) {
+                    case FIELD:
+                    case ENUM_CONSTANT:
+                        entries.put(fieldKey((VariableElement) member),
+                                new byte[]{encode(factory.getAnnotatedType(member))});
+                        break;
+                    case METHOD:
+                    case CONSTRUCTOR:
+                        AnnotatedExecutableType method = (AnnotatedExecutableType) factory.getAnnotatedType(member);
+                        List<AnnotatedTypeMirror> parameters = method.getParameterTypes();
+                        if (parameters.size() + 2 > 0xFF) {
+                            // Doesn't fit the one byte length. Downstream falls back to defaults
+                            break;
+                        }
+                        byte[] codes = new byte[parameters.size() + 2];
+                        codes[0] = method.getReceiverType() == null ? NONE : encode(method.getReceiverType());
+                        codes[1] = encode(method.getReturnType());
+                        for (int i = 0; i < parameters.size(); i++) {
+                            codes[i + 2] = encode(parameters.get(i));
+                        }
+                        entries.put(methodKey((ExecutableElement) member, types), codes);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private byte encode(AnnotatedTypeMirror type) {
+            AnnotationMirror qualifier = type.getAnnotationInHierarchy(READONLY);
+            if (qualifier == null) {
+                return NONE;
+            }
+            for (int i = 0; i < qualifiers.length; i++) {
+                if (AnnotationUtils.areSame(qualifiers[i], qualifier)) {
+                    return (byte) i;
+                }
+            }
+            return NONE;
+        }
+
+        public void write(File file) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(qualifiers.length);
+                for (AnnotationMirror qualifier : qualifiers) {
+                    writeString(out, AnnotationUtils.annotationName(qualifier));
+                }
+                out.writeInt(entries.size());
+                for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                    writeString(out, e.getKey());
+                    out.writeByte(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package pico.typecheck;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+
+import org.checkerframework.framework.source.SourceChecker;
+import org.checkerframework.javacutil.ElementUtils;
+
+import com.sun.source.tree.CompilationUnitTree;
+
+/**
+ * Source code that is trusted instead of checked, e.g. generated protobuf, gRPC or JAXB classes,
+ * given by option "trustedPackages": a comma separated list of package names, which include their
+ * subpackages, and source roots, which are directories ending with a file separator.
+ *
+ * Trusted classes are treated like bytecode: their method bodies are neither visited nor analyzed by
+ * dataflow, no variable slots are created for them during inference, and uses of them see the types
+ * of their signatures, with locations that aren't annotated filled from summaries like for bytecode.
+ */
+public class PICOTrustedCode {
+
+    public static final String TRUSTED_PACKAGES = "trustedPackages";
+
+    public static final PICOTrustedCode NONE = new PICOTrustedCode(Collections.emptyList(), Collections.emptyList());
+
+    private final List<String> packages;
+    private final List<String> sourceRoots;
+
+    private PICOTrustedCode(List<String> packages, List<String> sourceRoots) {
+        this.packages = packages;
+        this.sourceRoots = sourceRoots;
+    }
+
+    public static PICOTrustedCode fromOptions(SourceChecker checker) {
+        String option = checker.getOption(TRUSTED_PACKAGES);
+        if (option == null) {
+            return NONE;
+        }
+        List<String> packages = new ArrayList<>();
+        List<String> sourceRoots = new ArrayList<>();
+        for (String entry : option.split(",")) {
+            entry = entry.trim();
+            if (entry.endsWith(File.separator) || entry.endsWith("/")) {
+                sourceRoots.add(new File(entry).getAbsolutePath() + File.separator);
+            } else if (!entry.isEmpty()) {
+                packages.add(entry);
+            }
+        }
+        return new PICOTrustedCode(packages, sourceRoots);
+    }
+
+    public boolean isEmpty() {
+        return packages.isEmpty() && sourceRoots.isEmpty();
+    }
+
+    public boolean isTrusted(CompilationUnitTree unit) {
+        if (isEmpty()) {
+            return false;
+        }
+        if (unit.getPackageName() != null && isTrustedPackage(unit.getPackageName().toString())) {
+            return true;
+        }
+        if (!sourceRoots.isEmpty() && unit.getSourceFile() != null
+                && "file".equals(unit.getSourceFile().toUri().getScheme())) {
+            String path = new File(unit.getSourceFile().toUri()).getAbsolutePath();
+            for (String root : sourceRoots) {
+                if (path.startsWith(root)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Only packages are matched here. Elements of trusted source roots need the compilation unit that declares
+     * them, see {@link #isTrusted(CompilationUnitTree)}.
+     */
+    public boolean isTrusted(Element element) {
+        if (packages.isEmpty() || ElementUtils.isElementFromByteCode(element)) {
+            return false;
+        }
+        PackageElement pkg = ElementUtils.enclosingPackage(element);
+        return pkg != null && isTrustedPackage(pkg.getQualifiedName().toString());
+    }
+
+    private boolean isTrustedPackage(String name) {
+        for (String trusted : packages) {
+            if (name.equals(trusted) || name.startsWith(trusted + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -16,6 +16,7 @@ import com.sun.source.tree.VariableTree;
 import com.sun.source.util.TreePath;
 import org.checkerframework.framework.qual.ImplicitFor;
 import org.checkerframework.framework.qual.TypeKind;
+import org.checkerframework.framework.source.SourceChecker;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedArrayType;
@@ -26,6 +27,7 @@ import org.checkerframework.javacutil.AnnotationProvider;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.TreeUtils;
 import org.checkerframework.javacutil.TypesUtils;
+import org.checkerframework.javacutil.UserError;
 import qual.Assignable;
 import qual.Immutable;
 import qual.ObjectIdentityMethod;
@@ -175,6 +177,9 @@ public class PICOTypeUtil {
         // All other elements that are: not implicitly immutable types specified in definition of @Immutable qualifier;
         // Or has no bound annotation on its type element declaration either in source tree or stub file(jdk.astub) have
         // @Mutable in its bound
+        if (atypeFactory instanceof PICOAnnotatedTypeFactory) {
+            return ((PICOAnnotatedTypeFactory) atypeFactory).getClassBound(typeElement);
+        }
         return atypeFactory.getAnnotatedType(typeElement);
 
         // It's a bit strange that bound annotations on implicilty immutable types
@@ -380,10 +385,20 @@ public class PICOTypeUtil {
         return enclosingType;
     }
 
-    public static AnnotationMirror createEquivalentVarAnnotOfRealQualifier(final AnnotationMirror am) {
-        final SlotManager slotManager = InferenceMain.getInstance().getSlotManager();
-        ConstantSlot constantSlot = slotManager.createConstantSlot(am);
-        return slotManager.getAnnotation(constantSlot);
+    /**
+     * Capacity of the caches of PICO's factories, option "cacheSize": the tree-keyed ones and the class bounds.
+     * Together with -AatfCacheSize, which bounds the caches of the framework, it bounds what is cached.
+     */
+    public static int getCacheSize(SourceChecker checker) {
+        String size = checker.getOption("cacheSize");
+        if (size == null) {
+            return PICOLhsTypeCache.DEFAULT_CAPACITY;
+        }
+        try {
+            return Integer.parseInt(size);
+        } catch (NumberFormatException e) {
+            throw new UserError("Invalid cacheSize: " + size);
+        }
     }
 
     public static boolean inStaticScope(TreePath treePath) {
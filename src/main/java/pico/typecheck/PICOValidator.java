@@ -52,9 +52,10 @@ public class PICOValidator extends BaseTypeValidator {
     }
 
     private void checkStaticReceiverDependantMutableError(AnnotatedTypeMirror type, Tree tree) {
-        if (PICOTypeUtil.inStaticScope(visitor.getCurrentPath())
-                && !"".contentEquals(TreeUtils.enclosingClass(visitor.getCurrentPath()).getSimpleName())// Exclude @RDM usages in anonymous classes
-                && type.hasAnnotation(RECEIVER_DEPENDANT_MUTABLE)) {
+        PICOScopeStack scopes = ((PICOVisitor) visitor).scopes;
+        if (type.hasAnnotation(RECEIVER_DEPENDANT_MUTABLE)
+                && scopes.inStaticScope(visitor.getCurrentPath())
+                && !"".contentEquals(scopes.enclosingClass(visitor.getCurrentPath()).getSimpleName())) {// Exclude @RDM usages in anonymous classes
             reportValidityResult("static.receiverdependantmutable.forbidden", type, tree);
         }
     }
@@ -1,7 +1,19 @@
 package pico.typecheck;
 
+import static pico.typecheck.PICOAnnotationMirrorHolder.BOTTOM;
+import static pico.typecheck.PICOAnnotationMirrorHolder.COMMITED;
+import static pico.typecheck.PICOAnnotationMirrorHolder.IMMUTABLE;
+import static pico.typecheck.PICOAnnotationMirrorHolder.MUTABLE;
+import static pico.typecheck.PICOAnnotationMirrorHolder.POLY_MUTABLE;
+import static pico.typecheck.PICOAnnotationMirrorHolder.READONLY;
+import static pico.typecheck.PICOAnnotationMirrorHolder.RECEIVER_DEPENDANT_MUTABLE;
+import static pico.typecheck.PICOAnnotationMirrorHolder.SUBSTITUTABLE_POLY_MUTABLE;
+
+import org.checkerframework.checker.initialization.qual.FBCBottom;
+import org.checkerframework.checker.initialization.qual.Initialized;
 import org.checkerframework.framework.flow.CFAbstractAnalysis;
 import org.checkerframework.framework.flow.CFAbstractValue;
+import org.checkerframework.javacutil.AnnotationUtils;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.type.TypeMirror;
@@ -9,9 +21,115 @@ import java.util.Set;
 
 /**
  * Created by mier on 15/08/17.
+ *
+ * Besides the annotation set the framework works with, a value packs its mutability qualifier and
+ * initialization state into one int. Joins and comparisons of values with the same key and type,
+ * the common case when a loop reaches its fixpoint, then return an existing value instead of
+ * computing and allocating a new annotation set. Most values are never joined or compared, so the
+ * key is only packed when it's first needed. Qualifiers come from {@link PICOAnnotationMirrorHolder}
+ * almost always, so they are matched by identity before comparing them by name.
+ *
+ * Values created, keys packed and shortcut joins and comparisons are counted in "value.created",
+ * "value.keys" and "value.shortcuts".
  */
 public class PICOValue extends CFAbstractValue<PICOValue>{
+
+    /**Annotations that can't be packed, e.g. @UnderInitialization(Frame.class) whose frame matters*/
+    private static final int UNPACKABLE = -1;
+    private static final int NOT_PACKED = -2;
+
+    private int key = NOT_PACKED;
+
     public PICOValue(CFAbstractAnalysis<PICOValue, ?, ?> analysis, Set<AnnotationMirror> annotations, TypeMirror underlyingType) {
         super(analysis, annotations, underlyingType);
     }
+
+    private int key() {
+        if (key == NOT_PACKED) {
+            key = pack(annotations);
+            increment("value.keys");
+        }
+        return key;
+    }
+
+    private void increment(String counter) {
+        PICOStatistics statistics = ((PICOAnalysis) analysis).getStatistics();
+        if (statistics != null) {
+            statistics.increment(counter);
+        }
+    }
+
+    private static int pack(Set<AnnotationMirror> annotations) {
+        int mutability = 0;
+        int initialization = 0;
+        for (AnnotationMirror anno : annotations) {
+            int ordinal = mutabilityOrdinal(anno);
+            if (ordinal != 0) {
+                mutability = ordinal;
+            } else if (anno == COMMITED || AnnotationUtils.areSameByClass(anno, Initialized.class)) {
+                initialization = 1;
+            } else if (AnnotationUtils.areSameByClass(anno, FBCBottom.class)) {
+                initialization = 2;
+            } else {
+                return UNPACKABLE;
+            }
+        }
+        return mutability << 4 | initialization;
+    }
+
+    /**1-based, 0 if anno isn't a mutability qualifier*/
+    private static int mutabilityOrdinal(AnnotationMirror anno) {
+        if (anno == READONLY) return 1;
+        if (anno == MUTABLE) return 2;
+        if (anno == POLY_MUTABLE) return 3;
+        if (anno == RECEIVER_DEPENDANT_MUTABLE) return 4;
+        if (anno == SUBSTITUTABLE_POLY_MUTABLE) return 5;
+        if (anno == IMMUTABLE) return 6;
+        if (anno == BOTTOM) return 7;
+        if (AnnotationUtils.areSame(anno, READONLY)) return 1;
+        if (AnnotationUtils.areSame(anno, MUTABLE)) return 2;
+        if (AnnotationUtils.areSame(anno, POLY_MUTABLE)) return 3;
+        if (AnnotationUtils.areSame(anno, RECEIVER_DEPENDANT_MUTABLE)) return 4;
+        if (AnnotationUtils.areSame(anno, SUBSTITUTABLE_POLY_MUTABLE)) return 5;
+        if (AnnotationUtils.areSame(anno, IMMUTABLE)) return 6;
+        if (AnnotationUtils.areSame(anno, BOTTOM)) return 7;
+        return 0;
+    }
+
+    /**Same qualifiers and same type, decided without comparing annotation sets*/
+    private boolean isSameAs(PICOValue other) {
+        boolean same = other != null && key() != UNPACKABLE && key() == other.key()
+                && (getUnderlyingType() == other.getUnderlyingType()
+                    || analysis.getTypes().isSameType(getUnderlyingType(), other.getUnderlyingType()));
+        if (same) {
+            increment("value.shortcuts");
+        }
+        return same;
+    }
+
+    @Override
+    public PICOValue leastUpperBound(PICOValue other) {
+        if (isSameAs(other)) {
+            return this;
+        }
+        return super.leastUpperBound(other);
+    }
+
+    @Override
+    public PICOValue mostSpecific(PICOValue other, PICOValue backup) {
+        if (isSameAs(other)) {
+            return this;
+        }
+        return super.mostSpecific(other, backup);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof PICOValue && key() != UNPACKABLE && ((PICOValue) obj).key() != UNPACKABLE
+                && key() != ((PICOValue) obj).key()) {
+            increment("value.shortcuts");
+            return false;
+        }
+        return super.equals(obj);
+    }
 }
@@ -18,10 +18,12 @@ import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 
 import org.checkerframework.checker.initialization.InitializationVisitor;
+import org.checkerframework.checker.initialization.qual.Initialized;
 import org.checkerframework.checker.initialization.qual.UnderInitialization;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.TypeValidator;
@@ -51,6 +53,7 @@ import com.sun.source.tree.Tree;
 import com.sun.source.tree.Tree.Kind;
 import com.sun.source.tree.UnaryTree;
 import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
 
 /**
  * Created by mier on 20/06/17.
@@ -59,12 +62,43 @@ import com.sun.source.tree.VariableTree;
 public class PICOVisitor extends InitializationVisitor<PICOAnnotatedTypeFactory, PICOValue, PICOStore> {
 
     private final boolean shouldOutputFbcError;
-    final Map<String, Integer> fbcViolatedMethods;
+    /**Methods invoked on receivers under initialization although they require initialized ones*/
+    final Map<ExecutableElement, Integer> fbcViolatedMethods;
+    /**Summary of the checked classes, only collected if it's going to be written*/
+    final PICOSummary.Builder summary;
+    /**Scope of the tree being visited, queried by PICOValidator for every validated type*/
+    final PICOScopeStack scopes = new PICOScopeStack();
+    /**Generated sources that aren't checked*/
+    private final PICOTrustedCode trusted;
 
     public PICOVisitor(BaseTypeChecker checker) {
         super(checker);
         shouldOutputFbcError = checker.hasOption("printFbcErrors");
         fbcViolatedMethods = shouldOutputFbcError ? new HashMap<>() : null;
+        summary = checker.hasOption(PICOSummary.SUMMARY_OUT) ? new PICOSummary.Builder() : null;
+        trusted = PICOTrustedCode.fromOptions(checker);
+    }
+
+    /**Classes of trusted units aren't visited, which also means they aren't analyzed by dataflow*/
+    @Override
+    public void visit(TreePath path) {
+        if (trusted.isTrusted(path.getCompilationUnit())) {
+            ((PICOChecker) checker).getStatistics().increment("trusted.skipped.classes");
+            return;
+        }
+        super.visit(path);
+    }
+
+    @Override
+    public Void scan(Tree tree, Void p) {
+        boolean pushed = scopes.push(tree, getCurrentPath());
+        try {
+            return super.scan(tree, p);
+        } finally {
+            if (pushed) {
+                scopes.pop();
+            }
+        }
     }
 
     @Override
@@ -427,27 +461,27 @@ public class PICOVisitor extends InitializationVisitor<PICOAnnotatedTypeFactory,
 
         if (!skipReceiverSubtypeCheck(node, methodReceiver, rcv)
                 && !atypeFactory.getTypeHierarchy().isSubtype(treeReceiver, methodReceiver)) {
+            // Types are passed as they are: they are only rendered if the message is really printed
             checker.report(
                     Result.failure(
                             "method.invocation.invalid",
                             TreeUtils.elementFromUse(node),
-                            treeReceiver.toString(),
-                            methodReceiver.toString()),
+                            treeReceiver,
+                            methodReceiver),
                     node);
             /*Difference Starts*/
             if (shouldOutputFbcError) {
-                saveFbcViolatedMethods(TreeUtils.elementFromUse(node), treeReceiver.toString(), methodReceiver.toString());
+                saveFbcViolatedMethods(TreeUtils.elementFromUse(node), treeReceiver, methodReceiver);
             }
             /*Different Ends*/
         }
         /*Copied Code Ends*/
     }
 
-    private void saveFbcViolatedMethods(ExecutableElement method, String actualReceiver, String declaredReceiver) {
-        if (actualReceiver.contains("@UnderInitialization") && declaredReceiver.contains("@Initialized")) {
-            String key = ElementUtils.enclosingClass(method) + "#" + method;
-            Integer times = fbcViolatedMethods.get(key) == null ? 1 : fbcViolatedMethods.get(key) + 1;
-            fbcViolatedMethods.put(key, times);
+    private void saveFbcViolatedMethods(ExecutableElement method, AnnotatedTypeMirror actualReceiver, AnnotatedTypeMirror declaredReceiver) {
+        if (AnnotationUtils.containsSameByClass(actualReceiver.getAnnotations(), UnderInitialization.class)
+                && AnnotationUtils.containsSameByClass(declaredReceiver.getAnnotations(), Initialized.class)) {
+            fbcViolatedMethods.merge(method, 1, Integer::sum);
         }
     }
 
@@ -491,7 +525,7 @@ public class PICOVisitor extends InitializationVisitor<PICOAnnotatedTypeFactory,
         TypeElement typeElement = TreeUtils.elementFromDeclaration(node);
         // TODO Don't process anonymous class. I'm not even sure if whether processClassTree(ClassTree) is
         // called on anonymous class tree
-        if (typeElement.toString().contains("anonymous")) {
+        if (typeElement.getNestingKind() == NestingKind.ANONYMOUS) {
             super.processClassTree(node);
             return;
         }
@@ -513,6 +547,9 @@ public class PICOVisitor extends InitializationVisitor<PICOAnnotatedTypeFactory,
         // Reach this point iff 1) bound annotation is one of mutable, rdm or immutable;
         // 2) bound is compatible with bounds on super types. Only continue if bound check
         // passed. Reaching here already means having passed bound check.
+        if (summary != null) {
+            summary.addClass(typeElement, atypeFactory);
+        }
         super.processClassTree(node);
     }
 
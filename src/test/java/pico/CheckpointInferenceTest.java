@@ -0,0 +1,106 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.javacutil.Pair;
+import org.junit.Assert;
+import org.junit.runners.Parameterized.Parameters;
+
+import checkers.inference.test.CFInferenceTest;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.solver.PICOSolverEngine;
+
+/**
+ * Infers FoldedReadonlyDomains while writing a checkpoint, checks that the checkpoint holds domain records,
+ * then solves again from the checkpoint. Reading it checks the record counts of the trailer, and the class
+ * bound, whose domain is the only thing that excludes @Readonly, must not be solved to @Readonly.
+ */
+public class CheckpointInferenceTest extends CFInferenceTest {
+
+    private final File input;
+    private final File checkpoint;
+    private boolean resume = false;
+
+    public CheckpointInferenceTest(File testFile) {
+        super(testFile, PICOInferenceChecker.class, "",
+              "-Anomsgtext", "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testdata/inference/checkpoint");
+        input = testFile;
+        checkpoint = new File("testTmp/checkpoint", testFile.getName() + ".checkpoint");
+        checkpoint.getParentFile().mkdirs();
+    }
+
+    @Override
+    public Pair<String, List<String>> getSolverNameAndOptions() {
+        String file = (resume ? PICOSolverEngine.RESUME_FROM : PICOSolverEngine.CHECKPOINT) + "=" + checkpoint.getPath();
+        return Pair.<String, List<String>> of(PICOSolverEngine.class.getCanonicalName(),
+                new ArrayList<String>(Arrays.asList("useGraph=false", "collectStatistic=true", file)));
+    }
+
+    @Override
+    public boolean useHacks() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        checkpoint.delete();
+        super.run();
+        try {
+            int[] counts = trailer(Files.readAllBytes(checkpoint.toPath()));
+            Assert.assertTrue("No domain records in " + checkpoint, counts[2] > 0);
+        } catch (IOException e) {
+            throw new AssertionError("No checkpoint written to " + checkpoint, e);
+        }
+
+        File result = new File("pico-checkpoint-result.txt");
+        result.delete();
+        resume = true;
+        super.run();
+        String className = input.getName().replace(".java", "");
+        try {
+            boolean found = false;
+            // Lines are slot id, solution, location. The class bound is located by the class name
+            for (String line : Files.readAllLines(result.toPath())) {
+                String[] fields = line.split(",", 3);
+                if (fields.length == 3 && fields[2].equals(className)) {
+                    found = true;
+                    Assert.assertFalse("Class bound solved to " + fields[1], fields[1].contains("Readonly"));
+                }
+            }
+            Assert.assertTrue("No solution for the bound of " + className + " in " + result, found);
+        } catch (IOException e) {
+            throw new AssertionError("No result written when resuming from " + checkpoint, e);
+        }
+    }
+
+    /**
+     * @return slot, constraint and domain counts of the trailer, the last three varints of the checkpoint. A
+     * varint ends with the only one of its bytes whose high bit is clear, so they can be read backwards.
+     */
+    private static int[] trailer(byte[] bytes) {
+        int[] counts = new int[3];
+        int end = bytes.length;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            int start = end - 1;
+            while (start > 0 && (bytes[start - 1] & 0x80) != 0) {
+                start--;
+            }
+            for (int b = end - 1; b >= start; b--) {
+                counts[i] = counts[i] << 7 | (bytes[b] & 0x7F);
+            }
+            end = start;
+        }
+        return counts;
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return Collections.singletonList(new File("testinput/inference/inferrable/FoldedReadonlyDomains.java"));
+    }
+}
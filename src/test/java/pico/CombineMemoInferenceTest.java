@@ -0,0 +1,69 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.javacutil.Pair;
+import org.junit.Assert;
+import org.junit.runners.Parameterized.Parameters;
+
+import checkers.inference.test.CFInferenceTest;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.solver.PICOSolverEngine;
+
+/**
+ * Infers RepeatedFieldAccess with option profile and counts the CombineConstraints in
+ * pico-inference-profile.csv. Its ten this.a.x adapt the same two pairs of slots, which would be
+ * two CombineConstraints each if repeated adaptations weren't reused.
+ */
+public class CombineMemoInferenceTest extends CFInferenceTest {
+
+    private static final int ACCESSES = 10;
+
+    public CombineMemoInferenceTest(File testFile) {
+        super(testFile, PICOInferenceChecker.class, "",
+              "-Anomsgtext", "-Aprofile", "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testdata/inference/combine");
+    }
+
+    @Override
+    public Pair<String, List<String>> getSolverNameAndOptions() {
+        return Pair.<String, List<String>> of(PICOSolverEngine.class.getCanonicalName(),
+                new ArrayList<String>(Arrays.asList("useGraph=false", "collectStatistic=true")));
+    }
+
+    @Override
+    public boolean useHacks() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        File profile = new File("pico-inference-profile.csv");
+        profile.delete();
+        super.run();
+        try {
+            long combines = 0;
+            for (String row : Files.readAllLines(profile.toPath())) {
+                String[] fields = row.split(",");
+                if (fields.length == 5 && fields[0].equals("kind") && fields[1].equals("CombineConstraint")) {
+                    combines = Long.parseLong(fields[3]);
+                }
+            }
+            Assert.assertTrue("No CombineConstraint for this.a.x", combines > 0);
+            // Without reuse there would be at least one per access
+            Assert.assertTrue(combines + " CombineConstraints for " + ACCESSES + " accesses to this.a.x", combines < ACCESSES);
+        } catch (IOException e) {
+            throw new AssertionError("No profile written to " + profile, e);
+        }
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return Collections.singletonList(new File("testinput/inference/inferrable/RepeatedFieldAccess.java"));
+    }
+}
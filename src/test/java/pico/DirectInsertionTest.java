@@ -0,0 +1,112 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.checkerframework.framework.test.TestUtilities;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import pico.inference.PICOInferenceChecker;
+import pico.inference.PICOSourceAnnotationWriter;
+import pico.inference.solver.PICOSolverEngine;
+
+/**
+ * Infers each file of testinput/inference/inferrable once, inserts the solutions both with AFU from the jaif
+ * and in process with insertTo, the way infer.sh -direct does including the AFU pass over the units listed in
+ * pico-insertion-fallback.txt, and checks that both write the same sources. Every file works in its own
+ * directory under testdata/insertion, because inference writes the jaif and the fallback list to the working
+ * directory. At least one file of the corpus has to go through the fallback.
+ */
+@RunWith(Parameterized.class)
+public class DirectInsertionTest {
+
+    private static final File WORK_DIR = new File("testdata/insertion");
+    private static final String STUBS = "src/main/java/pico/typecheck/jdk.astub";
+    private static int fallbacks = 0;
+
+    private final File input;
+
+    public DirectInsertionTest(File testFile) {
+        input = testFile;
+    }
+
+    @Test
+    public void run() throws IOException, InterruptedException {
+        File workDir = new File(WORK_DIR, input.getPath().replace(File.separatorChar, '_').replace(".java", "")).getAbsoluteFile();
+        PICOBenchmark.delete(workDir);
+        File direct = new File(workDir, "direct");
+        File afu = new File(workDir, "afu");
+        File classes = new File(workDir, "classes");
+        classes.mkdirs();
+        String source = input.getAbsolutePath();
+
+        exec(workDir, Arrays.asList(System.getProperty("path.inference.script"), "-m", "INFER",
+                "--checker", PICOInferenceChecker.class.getName(), "--solver", PICOSolverEngine.class.getName(),
+                "--solverArgs=useGraph=false,collectStatistic=true," + PICOSolverEngine.INSERT_TO + "=" + direct.getPath(),
+                "--hacks=true", "-Anomsgtext", "-Astubs=" + new File(STUBS).getAbsolutePath(), "-d", classes.getPath(), source));
+        exec(workDir, Arrays.asList(insertAnnotationsToSource(), "-d", afu.getPath(), "default.jaif", source));
+        List<String> fallback = Files.readAllLines(new File(workDir, PICOSourceAnnotationWriter.FALLBACK_FILE).toPath());
+        if (!fallback.isEmpty()) {
+            fallbacks++;
+            List<String> command = new ArrayList<>(Arrays.asList(insertAnnotationsToSource(), "-d", direct.getPath(), "default.jaif"));
+            command.addAll(fallback);
+            exec(workDir, command);
+        }
+
+        TreeSet<String> afuFiles = list(afu);
+        Assert.assertFalse("AFU wrote no source for " + input, afuFiles.isEmpty());
+        Assert.assertEquals("Sources written for " + input, afuFiles, list(direct));
+        for (String file : afuFiles) {
+            Assert.assertEquals("Annotated " + file + " of " + input,
+                    new String(Files.readAllBytes(new File(afu, file).toPath())),
+                    new String(Files.readAllBytes(new File(direct, file).toPath())));
+        }
+    }
+
+    @AfterClass
+    public static void checkFallback() {
+        Assert.assertTrue("No file of the corpus went through the AFU fallback", fallbacks > 0);
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return new ArrayList<>(TestUtilities.findRelativeNestedJavaFiles("testinput", "inference/inferrable"));
+    }
+
+    private static String insertAnnotationsToSource() {
+        return System.getProperty("path.afu.scripts") + File.separator + "insert-annotations-to-source";
+    }
+
+    private static void exec(File workDir, List<String> command) throws IOException, InterruptedException {
+        File log = new File(workDir, "commands.log");
+        Process process = new ProcessBuilder(command).directory(workDir).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log)).start();
+        int exit = process.waitFor();
+        Assert.assertEquals(String.join(" ", command) + " failed, see " + log, 0, exit);
+    }
+
+    /**@return paths of the java files under dir, relative to it*/
+    private static TreeSet<String> list(File dir) throws IOException {
+        if (!dir.exists()) {
+            return new TreeSet<>();
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.filter(path -> path.toString().endsWith(".java"))
+                    .map(path -> dir.toPath().relativize(path).toString())
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package pico;
+
+import org.checkerframework.framework.test.TestUtilities;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typechecks the typecheck corpus once with PICOChecker and once in fast mode, i.e. with
+ * PICOInferenceChecker as a plain checker, which has no initialization hierarchy, and prints both times.
+ * Each file is compiled on its own like in ImmutabilityTypecheckTests. Expected diagnostics aren't
+ * compared here, FastModeTypecheckTest does that.
+ */
+@Category(PICOBenchmark.class)
+public class FastModeBenchmarkTest {
+
+    private static final List<String> FULL = Arrays.asList("-processor", "pico.typecheck.PICOChecker");
+    private static final List<String> FAST = Arrays.asList("-processor", "pico.inference.PICOInferenceChecker",
+            "-Astubs=src/main/java/pico/typecheck/jdk.astub");
+
+    @Test
+    public void run() throws IOException {
+        List<File> corpus = TestUtilities.findRelativeNestedJavaFiles("testinput", "typecheck");
+        // Warm up, so that class loading isn't measured for whichever runs first
+        check(corpus, FULL);
+        check(corpus, FAST);
+
+        long full = check(corpus, FULL);
+        long fast = check(corpus, FAST);
+        System.out.format("Typechecked %d files: full %dms, fast %dms, speedup %.2fx\n",
+                corpus.size(), full, fast, fast == 0 ? 0.0 : (double) full / fast);
+    }
+
+    /**@return milliseconds it took*/
+    private static long check(List<File> files, List<String> checker) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = new ArrayList<>(checker);
+        options.addAll(Arrays.asList("-Anomsgtext", "-Anocheckjdk", "-XDshouldStopPolicyIfNoError=FLOW",
+                "-XDshouldStopPolicyIfError=FLOW"));
+        long start = System.currentTimeMillis();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            for (File file : files) {
+                Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(Collections.singletonList(file));
+                compiler.getTask(null, fileManager, new DiagnosticCollector<>(), options, null, units).call();
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
@@ -0,0 +1,87 @@
+package pico;
+
+import org.checkerframework.framework.test.CheckerFrameworkPerFileTest;
+import org.checkerframework.framework.test.CompilationResult;
+import org.checkerframework.framework.test.TestConfiguration;
+import org.checkerframework.framework.test.TestConfigurationBuilder;
+import org.checkerframework.framework.test.TestUtilities;
+import org.checkerframework.framework.test.TypecheckExecutor;
+import org.checkerframework.framework.test.TypecheckResult;
+import org.checkerframework.framework.test.diagnostics.TestDiagnostic;
+import org.junit.Test;
+import org.junit.runners.Parameterized.Parameters;
+import pico.inference.PICOInferenceChecker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Typechecks the typecheck corpus in fast mode, i.e. with PICOInferenceChecker as a plain checker, and
+ * expects the diagnostics of ImmutabilityTypecheckTests without the initialization ones.
+ *
+ * Besides the "initialization.*" keys, the files in {@link #DIFFERENT} expect diagnostics that fast mode
+ * doesn't report:
+ * FbcViolatingMethod.java: method.invocation.invalid is reported because the receiver is @UnderInitialization,
+ * a qualifier of the initialization hierarchy.
+ * ObjectIdentityMethodTest.java: the object identity warnings come from ObjectIdentityMethodEnforcer, which
+ * only PICOVisitor runs.
+ */
+public class FastModeTypecheckTest extends CheckerFrameworkPerFileTest {
+
+    /**Expected keys that fast mode doesn't report, by file name*/
+    private static final Map<String, Set<String>> DIFFERENT = new HashMap<>();
+    static {
+        DIFFERENT.put("FbcViolatingMethod.java", Collections.singleton("method.invocation.invalid"));
+        DIFFERENT.put("ObjectIdentityMethodTest.java", new HashSet<>(Arrays.asList(
+                "object.identity.method.invocation.invalid", "object.identity.field.access.invalid",
+                "object.identity.static.field.access.forbidden")));
+    }
+
+    public FastModeTypecheckTest(File testFile) {
+        super(testFile, PICOInferenceChecker.class, "", "-Anomsgtext", "-Anocheckjdk",
+                "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testTmp/fastmode");
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return new ArrayList<>(TestUtilities.findRelativeNestedJavaFiles("testinput", "typecheck"));
+    }
+
+    @Override
+    @Test
+    public void run() {
+        TestConfiguration config = TestConfigurationBuilder.buildDefaultConfiguration(testDir, testFile, checker,
+                checkerOptions, TestUtilities.getShouldEmitDebugInfo());
+        Set<String> different = DIFFERENT.getOrDefault(testFile.getName(), Collections.emptySet());
+        TypecheckResult result = new TypecheckExecutor() {
+            @Override
+            public List<TestDiagnostic> readDiagnostics(TestConfiguration config, CompilationResult compilationResult) {
+                List<TestDiagnostic> expected = new ArrayList<>();
+                for (TestDiagnostic diagnostic : super.readDiagnostics(config, compilationResult)) {
+                    String key = key(diagnostic);
+                    if (!key.startsWith("initialization.") && !different.contains(key)) {
+                        expected.add(diagnostic);
+                    }
+                }
+                return expected;
+            }
+        }.runTest(config);
+        TestUtilities.assertResultsAreValid(result);
+    }
+
+    /**@return message key of diagnostic, which is its whole message with -Anomsgtext*/
+    private static String key(TestDiagnostic diagnostic) {
+        String message = diagnostic.getMessage().trim();
+        if (message.startsWith("(") && message.endsWith(")")) {
+            message = message.substring(1, message.length() - 1);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,93 @@
+package pico;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typechecks a generated project of 10k classes with bounded caches and prints the used heap every
+ * 1k checked compilation units. Types of checked units are released, so apart from what javac itself
+ * keeps per unit, the heap should level off instead of growing with the number of units.
+ */
+@Category(PICOBenchmark.class)
+public class HeapUsageBenchmarkTest {
+
+    private static final int CLASSES = 10_000;
+    private static final int SAMPLE_EVERY = 1_000;
+
+    @Test
+    public void run() throws IOException {
+        File dir = new File("testTmp/heapbenchmark");
+        List<File> files = generate(dir);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+            // Stop after flow analysis, PICO has run by then and class files aren't needed
+            List<String> options = Arrays.asList("-processor", "pico.typecheck.PICOChecker",
+                    "-Anocheckjdk", "-AcacheSize=100", "-AatfCacheSize=100", "-AprintStatistics",
+                    "-XDshouldStopPolicyIfNoError=FLOW");
+            JavacTask task = (JavacTask) compiler.getTask(null, fileManager, null, options, null, units);
+            task.addTaskListener(new HeapSampler());
+            long start = System.currentTimeMillis();
+            boolean success = task.call();
+            System.out.println("Typechecked " + CLASSES + " classes in " + (System.currentTimeMillis() - start) + "ms");
+            Assert.assertTrue("Generated project should typecheck", success);
+        } finally {
+            PICOBenchmark.delete(dir);
+        }
+    }
+
+    /**Every class uses its predecessor, so that class bounds of other units are looked up too*/
+    private static List<File> generate(File dir) throws IOException {
+        return PICOBenchmark.generate(dir, "heapbenchmark", "C", CLASSES, (i, pw) -> {
+            pw.println("public class C" + i + " {");
+            pw.println("    String name = \"\";");
+            pw.println("    int[] values = new int[8];");
+            if (i > 0) {
+                pw.println("    void link(C" + (i - 1) + " p) {");
+                pw.println("        p.name = name + \"" + i + "\";");
+                pw.println("    }");
+            }
+            pw.println("    int sum() {");
+            pw.println("        int s = 0;");
+            pw.println("        for (int v : values) {");
+            pw.println("            s += v;");
+            pw.println("        }");
+            pw.println("        return s;");
+            pw.println("    }");
+            pw.println("}");
+        });
+    }
+
+    private static class HeapSampler implements TaskListener {
+        private int analyzed = 0;
+
+        @Override
+        public void started(TaskEvent e) {
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            if (e.getKind() != TaskEvent.Kind.ANALYZE || ++analyzed % SAMPLE_EVERY != 0) {
+                return;
+            }
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            System.out.format("%10d units checked%10d MB used\n", analyzed,
+                    (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.util.List;
 
 import org.checkerframework.framework.test.TestUtilities;
 import org.checkerframework.javacutil.Pair;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
 import org.junit.runners.Parameterized.Parameters;
 
 import checkers.inference.test.CFInferenceTest;
@@ -15,9 +17,13 @@ import pico.inference.solver.PICOSolverEngine;
 
 public class ImmutabilityInferenceTest extends CFInferenceTest {
 
+    @Rule
+    public final TestRule timer;
+
     public ImmutabilityInferenceTest(File testFile) {
         super(testFile, PICOInferenceChecker.class, "",
               "-Anomsgtext", "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testdata/inference/inferrable");
+        timer = PICOTestTimings.timer("inference", testFile);
     }
 
     @Override
@@ -35,6 +41,6 @@ public class ImmutabilityInferenceTest extends CFInferenceTest {
     public static List<File> getTestFiles(){
         List<File> testfiles = new ArrayList<>();//InferenceTestUtilities.findAllSystemTests();
         testfiles.addAll(TestUtilities.findRelativeNestedJavaFiles("testinput", "inference/inferrable"));
-        return testfiles;
+        return PICOTestTimings.shard("inference", testfiles);
     }
 }
@@ -2,6 +2,8 @@ package pico;
 
 import org.checkerframework.framework.test.CheckerFrameworkPerFileTest;
 import org.checkerframework.framework.test.TestUtilities;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
 import org.junit.runners.Parameterized.Parameters;
 import pico.typecheck.PICOChecker;
 
@@ -10,15 +12,19 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ImmutabilityTypecheckTests extends CheckerFrameworkPerFileTest {
+    @Rule
+    public final TestRule timer;
+
     public ImmutabilityTypecheckTests(File testFile) {
         super(testFile, PICOChecker.class, "", "-Anomsgtext",
                 "-Anocheckjdk", "-d", "testTmp/typecheck");
+        timer = PICOTestTimings.timer("typecheck", testFile);
     }
 
     @Parameters
     public static List<File> getTestFiles(){
         List<File> testfiles = new ArrayList<>();
         testfiles.addAll(TestUtilities.findRelativeNestedJavaFiles("testinput", "typecheck"));
-        return testfiles;
+        return PICOTestTimings.shard("typecheck", testfiles);
     }
 }
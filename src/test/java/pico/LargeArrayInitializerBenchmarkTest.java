@@ -0,0 +1,68 @@
+package pico;
+
+import org.checkerframework.framework.test.CheckerFrameworkPerFileTest;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runners.Parameterized.Parameters;
+import pico.typecheck.PICOChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Typechecks a generated 100k-element array literal and a nested one, like generated lookup tables,
+ * and prints how long it took. The file is too big to check in, so it's generated under testTmp.
+ */
+@Category(PICOBenchmark.class)
+public class LargeArrayInitializerBenchmarkTest extends CheckerFrameworkPerFileTest {
+
+    private static final File DIR = new File("testTmp/benchmark");
+    private static final int ELEMENTS = 100_000;
+    private static final int ROWS = 20_000;
+
+    public LargeArrayInitializerBenchmarkTest(File testFile) {
+        // Such literals exceed the code size limit of a method, so stop after flow analysis instead of
+        // generating class files. PICO has already run by then.
+        super(testFile, PICOChecker.class, "", "-Anomsgtext",
+                "-Anocheckjdk", "-XDshouldStopPolicyIfNoError=FLOW", "-d", "testTmp/benchmark");
+    }
+
+    @Override
+    @Test
+    public void run() {
+        long start = System.currentTimeMillis();
+        super.run();
+        System.out.println("Typechecked " + testFile.getName() + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @Parameters
+    public static List<File> getTestFiles() throws IOException {
+        return PICOBenchmark.generate(DIR, "benchmark", "LargeArrayInitializer", 1, (index, pw) -> {
+            pw.println("public class LargeArrayInitializer" + index + " {");
+            pw.println("    void strings() {");
+            pw.print("        String[] table = {");
+            for (int i = 0; i < ELEMENTS; i++) {
+                pw.print(i == 0 ? "" : ", ");
+                pw.print("\"v" + i + "\"");
+            }
+            pw.println("};");
+            pw.println("    }");
+            pw.println("    void nested() {");
+            pw.print("        String[][] rows = {");
+            for (int i = 0; i < ROWS; i++) {
+                pw.print(i == 0 ? "" : ", ");
+                pw.print("{\"k" + i + "\", \"v" + i + "\"}");
+            }
+            pw.println("};");
+            pw.println("    }");
+            pw.println("}");
+        });
+    }
+
+    @AfterClass
+    public static void deleteGenerated() throws IOException {
+        PICOBenchmark.delete(DIR);
+    }
+}
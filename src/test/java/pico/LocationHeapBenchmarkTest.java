@@ -0,0 +1,81 @@
+package pico;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import pico.inference.PICOSlotLocations;
+import pico.inference.PICOSlotLocationsTest;
+import scenelib.annotations.io.ASTIndex;
+import scenelib.annotations.io.ASTRecord;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints the heap taken by one AstPathLocation per tree of a generated project of 2k classes and the heap of
+ * the same locations in {@link PICOSlotLocations}. Every location is built from a fresh copy of its ASTRecord,
+ * like VariableAnnotator does per slot. Only prints, PICOSlotLocationsTest checks that locations decode.
+ */
+@Category(PICOBenchmark.class)
+public class LocationHeapBenchmarkTest {
+
+    private static final int CLASSES = 2_000;
+
+    @Test
+    public void run() throws IOException {
+        File dir = new File("testTmp/locationbenchmark");
+        List<File> files = PICOSlotLocationsTest.generate(dir, "locationbenchmark", CLASSES);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+            JavacTask task = (JavacTask) compiler.getTask(null, fileManager, null, null, null, units);
+            List<ASTRecord> records = new ArrayList<>();
+            for (CompilationUnitTree unit : task.parse()) {
+                records.addAll(ASTIndex.indexOf(unit).values());
+            }
+            task.analyze();
+            long baseline = usedHeap();
+
+            List<AnnotationLocation> objects = new ArrayList<>(records.size());
+            for (ASTRecord record : records) {
+                objects.add(new AstPathLocation(PICOSlotLocationsTest.copy(record)));
+            }
+            long objectBytes = usedHeap() - baseline;
+            objects = null;
+            usedHeap();
+
+            PICOSlotLocations arena = new PICOSlotLocations();
+            for (int id = 0; id < records.size(); id++) {
+                AstPathLocation location = new AstPathLocation(PICOSlotLocationsTest.copy(records.get(id)));
+                if (arena.lookup(location) < 0) {
+                    arena.store(id, location);
+                }
+            }
+            long arenaBytes = usedHeap() - baseline;
+
+            System.out.format("%d locations: %d KB as objects, %d KB in arena(%d KB arena array, %d shared)\n",
+                    records.size(), objectBytes / 1024, arenaBytes / 1024, arena.getArenaBytes() / 1024,
+                    arena.getShared());
+        } finally {
+            PICOBenchmark.delete(dir);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
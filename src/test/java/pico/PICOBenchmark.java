@@ -0,0 +1,54 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * JUnit category of the benchmarks, which generate large projects under testTmp, print timings and heap
+ * usage, and delete the projects afterwards. They are not part of gradle task test, run ./gradlew benchmark.
+ * Its static methods write and delete the generated sources.
+ */
+public interface PICOBenchmark {
+
+    /**Writes the source of one generated class after its package declaration*/
+    interface Source {
+        void write(int index, PrintWriter pw);
+    }
+
+    /**@return files prefix0.java to prefix(count-1).java of package pkg under dir, written by source*/
+    static List<File> generate(File dir, String pkg, String prefix, int count, Source source) throws IOException {
+        File pkgDir = new File(dir, pkg.replace('.', File.separatorChar));
+        pkgDir.mkdirs();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = new File(pkgDir, prefix + i + ".java");
+            try (PrintWriter pw = new PrintWriter(file)) {
+                pw.println("package " + pkg + ";");
+                source.write(i, pw);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**Deletes dir and everything in it*/
+    static void delete(File dir) throws IOException {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            List<Path> all = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : all) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package pico;
+
+import org.junit.rules.TestRule;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-file wall time and allocation of the per-file test suites, checked against a stored baseline, and
+ * splitting of their input files into shards.
+ *
+ * System properties:
+ * <ul>
+ *  <li>pico.test.shards=N, pico.test.shard=K: only run shard K(0-based) of N. Files are spread so that the
+ *  shards take about the same baseline time, see {@link ShardedPerFileTest}</li>
+ *  <li>pico.test.regression=F: fail a file that takes more than F times its baseline time(plus
+ *  {@value #SLACK_MILLIS}ms for noise). Off(0) by default, {@link ShardedPerFileTest} runs its shards with 2.
+ *  The first file of a JVM isn't checked, it pays for class loading and JIT warm-up</li>
+ *  <li>pico.test.root=DIR: directory build/test-timings and the baseline are in, the working directory by
+ *  default</li>
+ * </ul>
+ *
+ * Every run writes "file,millis,allocatedBytes" to build/test-timings/SUITE-shardK.csv. The baseline is
+ * testinput/timings/SUITE.csv in the same format, written from those files by gradle task
+ * updateTestTimingsBaseline. Files missing from the baseline aren't checked. Allocation is what the test
+ * thread allocated, so it leaves out work done in other threads or processes.
+ *
+ * No baseline is committed yet: testinput/timings doesn't exist until updateTestTimingsBaseline is run and its
+ * output committed. Until then nothing is checked, and shards get about the same number of files each.
+ *
+ * Times are wall times. Shards running in parallel share the processors, so a file takes longer in a
+ * sharded run than in a sequential one like gradle task test. Take the baseline from the kind of run it
+ * is checked against, i.e. from ShardedPerFileTest with the same pico.test.workers. A baseline from a
+ * sequential run makes every file of a sharded run look slower, which the regression factor has to absorb.
+ */
+public class PICOTestTimings {
+
+    public static final String OUTPUT_DIR = "build/test-timings";
+    public static final String BASELINE_DIR = "testinput/timings";
+    private static final long SLACK_MILLIS = 500;
+
+    private static final Map<String, Map<String, Long>> baselines = new HashMap<>();
+    /**Output files written by this JVM so far. The first write replaces the file of a previous run*/
+    private static final Set<String> started = new HashSet<>();
+    /**Whether a file was timed in this JVM already*/
+    private static boolean warm = false;
+
+    /**@return the files of the shard this JVM runs, in their original order*/
+    public static List<File> shard(String suite, List<File> files) {
+        int shards = Integer.getInteger("pico.test.shards", 1);
+        int shard = Integer.getInteger("pico.test.shard", 0);
+        if (shards <= 1) {
+            return files;
+        }
+        Map<String, Long> baseline = baseline(suite);
+        long unknown = 0;
+        for (Long millis : baseline.values()) {
+            unknown = Math.max(unknown, millis);
+        }
+        // Longest first to the least loaded shard. Every JVM computes the same assignment
+        List<File> sorted = new ArrayList<>(files);
+        final long unknownMillis = unknown;
+        sorted.sort((a, b) -> {
+            int byTime = Long.compare(baseline.getOrDefault(b.getPath(), unknownMillis),
+                    baseline.getOrDefault(a.getPath(), unknownMillis));
+            return byTime != 0 ? byTime : a.getPath().compareTo(b.getPath());
+        });
+        long[] load = new long[shards];
+        Set<File> mine = new HashSet<>();
+        for (File file : sorted) {
+            int least = 0;
+            for (int i = 1; i < shards; i++) {
+                if (load[i] < load[least]) {
+                    least = i;
+                }
+            }
+            // At least 1ms, so files without baseline are still spread when there is no baseline at all
+            load[least] += Math.max(1, baseline.getOrDefault(file.getPath(), unknownMillis));
+            if (least == shard) {
+                mine.add(file);
+            }
+        }
+        List<File> result = new ArrayList<>();
+        for (File file : files) {
+            if (mine.contains(file)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**@return rule that times the test of file and fails it if it regressed against the baseline*/
+    public static TestRule timer(String suite, File file) {
+        return (base, description) -> new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                try {
+                    base.evaluate();
+                } finally {
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+                    record(suite, file, millis, allocated);
+                    check(suite, file, millis);
+                }
+            }
+        };
+    }
+
+    private static void check(String suite, File file, long millis) {
+        double factor = Double.parseDouble(System.getProperty("pico.test.regression", "0"));
+        Long baseline = baseline(suite).get(file.getPath());
+        boolean first = !warm;
+        warm = true;
+        if (factor <= 0 || baseline == null || first) {
+            return;
+        }
+        if (millis > baseline * factor + SLACK_MILLIS) {
+            throw new AssertionError(String.format("%s took %dms, more than %.1f times its baseline of %dms in %s",
+                    file.getPath(), millis, factor, baseline, resolve(BASELINE_DIR, suite + ".csv")));
+        }
+    }
+
+    private static synchronized void record(String suite, File file, long millis, long allocated) {
+        File output = resolve(OUTPUT_DIR, suite + "-shard" + Integer.getInteger("pico.test.shard", 0) + ".csv");
+        boolean append = !started.add(output.getPath());
+        output.getParentFile().mkdirs();
+        try (PrintWriter pw = new PrintWriter(new FileWriter(output, append))) {
+            if (!append) {
+                pw.println("file,millis,allocatedBytes");
+            }
+            pw.println(file.getPath() + "," + millis + "," + allocated);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static synchronized Map<String, Long> baseline(String suite) {
+        return baselines.computeIfAbsent(suite, s -> read(resolve(BASELINE_DIR, s + ".csv")));
+    }
+
+    /**@return file name in dir, relative to pico.test.root if it's set*/
+    static File resolve(String dir, String name) {
+        String root = System.getProperty("pico.test.root");
+        return new File(root == null ? new File(dir) : new File(root, dir), name);
+    }
+
+    /**@return millis per file of a timings file, empty if it doesn't exist*/
+    static Map<String, Long> read(File timings) {
+        if (!timings.exists()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> millis = new HashMap<>();
+        try {
+            List<String> lines = Files.readAllLines(timings.toPath());
+            for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+                String[] fields = line.split(",");
+                if (fields.length >= 2) {
+                    millis.put(fields[0], Long.parseLong(fields[1].trim()));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Malformed test timings " + timings + ": " + e.getMessage(), e);
+        }
+        return millis;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,84 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.javacutil.Pair;
+import org.junit.Assert;
+import org.junit.runners.Parameterized.Parameters;
+
+import checkers.inference.test.CFInferenceTest;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.solver.PICOSolverEngine;
+
+/**
+ * Infers FieldAssignCase3 with option profile, once on the default MaxSat backend and once with
+ * tieredPreferences, and checks that pico-inference-profile.csv reports encoded clauses for the class and for
+ * SubtypeConstraints both times.
+ */
+public class ProfilerInferenceTest extends CFInferenceTest {
+
+    private static final String CLASS_NAME = "FieldAssignCase3";
+
+    private boolean tiered = false;
+
+    public ProfilerInferenceTest(File testFile) {
+        super(testFile, PICOInferenceChecker.class, "",
+              "-Anomsgtext", "-Aprofile", "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testdata/inference/profile");
+    }
+
+    @Override
+    public Pair<String, List<String>> getSolverNameAndOptions() {
+        List<String> options = new ArrayList<String>(Arrays.asList("useGraph=false", "collectStatistic=true"));
+        if (tiered) {
+            options.add(PICOSolverEngine.TIERED_PREFERENCES + "=true");
+        }
+        return Pair.<String, List<String>> of(PICOSolverEngine.class.getCanonicalName(), options);
+    }
+
+    @Override
+    public boolean useHacks() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        for (boolean tieredPreferences : new boolean[]{false, true}) {
+            tiered = tieredPreferences;
+            File profile = new File("pico-inference-profile.csv");
+            profile.delete();
+            super.run();
+            String solver = tiered ? "tiered solver" : "default solver";
+            try {
+                List<String> rows = Files.readAllLines(profile.toPath());
+                Assert.assertTrue("No clauses of class " + CLASS_NAME + " with " + solver + ": " + rows,
+                        clauses(rows, "class", CLASS_NAME) > 0);
+                Assert.assertTrue("No clauses of SubtypeConstraints with " + solver + ": " + rows,
+                        clauses(rows, "kind", "SubtypeConstraint") > 0);
+            } catch (IOException e) {
+                throw new AssertionError("No profile written with " + solver + " to " + profile, e);
+            }
+        }
+    }
+
+    /**@return clauses of row level,name of the csv, -1 if there is none*/
+    private static long clauses(List<String> rows, String level, String name) {
+        for (String row : rows) {
+            String[] fields = row.split(",");
+            if (fields.length == 5 && fields[0].equals(level) && fields[1].equals(name)) {
+                return Long.parseLong(fields[4]);
+            }
+        }
+        return -1;
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return Collections.singletonList(new File("testinput/inference/inferrable/FieldAssignCase3.java"));
+    }
+}
@@ -0,0 +1,140 @@
+package pico;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs ImmutabilityTypecheckTests and ImmutabilityInferenceTest with their input files split into shards,
+ * each shard in its own forked JVM, a pool of pico.test.workers(half the processors by default) at a time.
+ * Forked JVMs rather than threads, because PICO and the inference framework keep per-run state in statics.
+ *
+ * Each shard runs with the arguments and classpath of this JVM, see {@link PICOTestTimings} for how files are
+ * split and timed, and fails files that regressed against the baseline unless pico.test.regression is set.
+ * There is no committed baseline yet, so nothing is failed until one is, and wall times of parallel shards are
+ * only comparable to a baseline that was taken from sharded runs too.
+ * Test inputs define the same classes in several files, and inference writes its results to the working
+ * directory, so every shard works in its own directory build/test-shards/SUITE-shardK, where testinput, src
+ * and lib link to the ones of the project. build/test-timings is cleared first, the output of a shard goes
+ * to build/test-timings/SUITE-shardK.log and is printed if the shard fails. Not part of gradle task test,
+ * which already runs both suites: run ./gradlew ShardedPerFileTest.
+ */
+public class ShardedPerFileTest {
+
+    private static final List<Class<?>> SUITES = Arrays.asList(ImmutabilityTypecheckTests.class, ImmutabilityInferenceTest.class);
+    private static final List<String> TIMED = Arrays.asList("typecheck", "inference");
+    private static final int SLOWEST = 10;
+    private static final String WORK_DIR = "build/test-shards";
+    /**Read by the suites, relative to the working directory*/
+    private static final List<String> SHARED = Arrays.asList("testinput", "src", "lib");
+
+    @Test
+    public void run() throws Exception {
+        int workers = Integer.getInteger("pico.test.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<String> shards = new ArrayList<>();
+        List<Future<Integer>> exits = new ArrayList<>();
+        // Timings of an earlier run with more shards would be merged into the baseline otherwise
+        delete(new File(PICOTestTimings.OUTPUT_DIR));
+        long start = System.currentTimeMillis();
+        for (int s = 0; s < SUITES.size(); s++) {
+            for (int shard = 0; shard < workers; shard++) {
+                File log = new File(PICOTestTimings.OUTPUT_DIR, TIMED.get(s) + "-shard" + shard + ".log");
+                Class<?> suite = SUITES.get(s);
+                int k = shard;
+                shards.add(log.getPath());
+                exits.add(pool.submit(() -> fork(suite, k, workers, log)));
+            }
+        }
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < exits.size(); i++) {
+            if (exits.get(i).get() != 0) {
+                failed.add(shards.get(i));
+                System.out.println("=== " + shards.get(i) + " ===");
+                System.out.println(new String(Files.readAllBytes(new File(shards.get(i)).toPath())));
+            }
+        }
+        pool.shutdown();
+        System.out.format("Ran %d shards on %d workers in %dms\n", exits.size(), workers, System.currentTimeMillis() - start);
+        for (String suite : TIMED) {
+            printSlowest(suite, workers);
+        }
+        Assert.assertTrue("Failed shards: " + failed, failed.isEmpty());
+    }
+
+    /**@return exit code of the forked JVM*/
+    private static int fork(Class<?> suite, int shard, int shards, File log) throws IOException, InterruptedException {
+        File workDir = new File(WORK_DIR, log.getName().replace(".log", ""));
+        delete(workDir);
+        workDir.mkdirs();
+        for (String shared : SHARED) {
+            Files.createSymbolicLink(new File(workDir, shared).toPath(), new File(shared).getAbsoluteFile().toPath());
+        }
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // Debug agents would fight over their port, and the test runner's security manager isn't on the classpath
+            if (!argument.startsWith("-agentlib:jdwp") && !argument.startsWith("-Djava.security.manager")
+                    && !argument.startsWith("-Dpico.test.shard") && !argument.startsWith("-Dpico.test.root")) {
+                command.add(argument);
+            }
+        }
+        command.add("-Dpico.test.shard=" + shard);
+        command.add("-Dpico.test.shards=" + shards);
+        command.add("-Dpico.test.root=" + new File("").getAbsolutePath());
+        if (System.getProperty("pico.test.regression") == null) {
+            command.add("-Dpico.test.regression=2");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("org.junit.runner.JUnitCore");
+        command.add(suite.getName());
+        log.getParentFile().mkdirs();
+        Process process = new ProcessBuilder(command).directory(workDir).redirectErrorStream(true)
+                .redirectOutput(log).start();
+        return process.waitFor();
+    }
+
+    /**Deletes dir and everything in it, without following links*/
+    private static void delete(File dir) throws IOException {
+        if (!dir.exists() && !Files.isSymbolicLink(dir.toPath())) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            List<Path> all = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : all) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void printSlowest(String suite, int shards) {
+        List<String[]> rows = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            File timings = new File(PICOTestTimings.OUTPUT_DIR, suite + "-shard" + shard + ".csv");
+            for (Map.Entry<String, Long> e : PICOTestTimings.read(timings).entrySet()) {
+                rows.add(new String[]{e.getKey(), String.valueOf(e.getValue())});
+            }
+        }
+        rows.sort((a, b) -> Long.compare(Long.parseLong(b[1]), Long.parseLong(a[1])));
+        System.out.println("Slowest " + suite + " files:");
+        for (String[] row : rows.subList(0, Math.min(SLOWEST, rows.size()))) {
+            System.out.format("%10sms  %s\n", row[1], row[0]);
+        }
+    }
+}
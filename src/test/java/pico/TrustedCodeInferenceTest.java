@@ -0,0 +1,66 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.checkerframework.framework.test.TestUtilities;
+import org.checkerframework.javacutil.Pair;
+import org.junit.Assert;
+import org.junit.runners.Parameterized.Parameters;
+
+import checkers.inference.test.CFInferenceTest;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.solver.PICOSolverEngine;
+
+/**
+ * Infers code that uses the trusted classes of testinput/inference/trustedsrc, and checks in the checkpoint of
+ * the generated slots that none of them is located in a trusted class.
+ */
+public class TrustedCodeInferenceTest extends CFInferenceTest {
+
+    private static final String TRUSTED_PACKAGE = "trustedgen";
+
+    private final File checkpoint;
+
+    public TrustedCodeInferenceTest(File testFile) {
+        super(testFile, PICOInferenceChecker.class, "",
+              "-Anomsgtext", "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testdata/inference/trusted",
+              "-sourcepath", "testinput/inference/trustedsrc", "-AtrustedPackages=" + TRUSTED_PACKAGE);
+        checkpoint = new File("testTmp/trusted", testFile.getName() + ".checkpoint");
+        checkpoint.getParentFile().mkdirs();
+    }
+
+    @Override
+    public Pair<String, List<String>> getSolverNameAndOptions() {
+        return Pair.<String, List<String>> of(PICOSolverEngine.class.getCanonicalName(),
+                new ArrayList<String>(Arrays.asList("useGraph=false", "collectStatistic=true",
+                        PICOSolverEngine.CHECKPOINT + "=" + checkpoint.getPath())));
+    }
+
+    @Override
+    public boolean useHacks() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        super.run();
+        try {
+            // Slot locations are stored as text, with the class they are in
+            String content = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.ISO_8859_1);
+            Assert.assertFalse("A slot was created in trusted code", content.contains(TRUSTED_PACKAGE + "."));
+        } catch (IOException e) {
+            throw new AssertionError("No checkpoint written to " + checkpoint, e);
+        }
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return new ArrayList<>(TestUtilities.findRelativeNestedJavaFiles("testinput", "inference/trusted"));
+    }
+}
@@ -0,0 +1,86 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.checkerframework.framework.test.TestUtilities;
+import org.checkerframework.javacutil.Pair;
+import org.junit.Assert;
+import org.junit.runners.Parameterized.Parameters;
+
+import checkers.inference.test.CFInferenceTest;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.solver.PICOSolverEngine;
+
+/**
+ * Infers code of testinput/inference/unsat, which has no solution, and checks the unsat core reported in
+ * pico-unsat-core.txt. A "// unsat core: RULE" comment expects a constraint of RULE at the line after it
+ * in the core.
+ */
+public class UnsatCoreInferenceTest extends CFInferenceTest {
+
+    private static final String MARKER = "// unsat core:";
+
+    private final File input;
+
+    public UnsatCoreInferenceTest(File testFile) {
+        super(testFile, PICOInferenceChecker.class, "",
+              "-Anomsgtext", "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testdata/inference/unsat");
+        input = testFile;
+    }
+
+    @Override
+    public Pair<String, List<String>> getSolverNameAndOptions() {
+        // Default MaxSat backend, PICOSolverEngine reports the unsat core whichever backend found no solution
+        return Pair.<String, List<String>> of(PICOSolverEngine.class.getCanonicalName(),
+                new ArrayList<String>(Arrays.asList("useGraph=false", "collectStatistic=true")));
+    }
+
+    @Override
+    public boolean useHacks() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        File core = new File("pico-unsat-core.txt");
+        core.delete();
+        boolean solved = true;
+        try {
+            super.run();
+        } catch (AssertionError e) {
+            // Expected, there is no solution to insert
+            solved = false;
+        }
+        Assert.assertFalse("Inference of " + input + " should have no solution", solved);
+        try {
+            List<String> reported = Files.readAllLines(core.toPath());
+            List<String> source = Files.readAllLines(input.toPath());
+            for (int i = 0; i < source.size(); i++) {
+                String line = source.get(i).trim();
+                if (!line.startsWith(MARKER)) {
+                    continue;
+                }
+                // Line numbers are 1-based, the expected line is the one after the marker
+                String expected = line.substring(MARKER.length()).trim() + " at ";
+                String location = input.getName() + ":" + (i + 2) + ": ";
+                boolean found = false;
+                for (String entry : reported) {
+                    found |= entry.startsWith(expected) && entry.contains(location);
+                }
+                Assert.assertTrue("No " + expected + "..." + location + " in unsat core " + reported, found);
+            }
+        } catch (IOException e) {
+            throw new AssertionError("No unsat core written to " + core, e);
+        }
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return new ArrayList<>(TestUtilities.findRelativeNestedJavaFiles("testinput", "inference/unsat"));
+    }
+}
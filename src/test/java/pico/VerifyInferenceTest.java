@@ -0,0 +1,112 @@
+package pico;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.framework.test.TestUtilities;
+import org.checkerframework.javacutil.Pair;
+import org.junit.Assert;
+import org.junit.runners.Parameterized.Parameters;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.backend.SolverFactory;
+import checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator;
+import checkers.inference.solver.backend.maxsat.MaxSatSolver;
+import checkers.inference.solver.backend.maxsat.MaxSatSolverFactory;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.test.CFInferenceTest;
+import pico.inference.PICOInferenceChecker;
+import pico.inference.solver.PICOFormatTranslator;
+import pico.inference.solver.PICOSolverEngine;
+import pico.typecheck.PICOAnnotationMirrorHolder;
+
+/**
+ * Infers code of testinput/inference/verify with verify=true, but with a solver that replaces every solution
+ * by @Readonly, and checks that the in process verification reports errors for it in pico-verify-result.txt.
+ */
+public class VerifyInferenceTest extends CFInferenceTest {
+
+    private final File input;
+
+    public VerifyInferenceTest(File testFile) {
+        super(testFile, PICOInferenceChecker.class, "",
+              "-Anomsgtext", "-Astubs=src/main/java/pico/typecheck/jdk.astub", "-d", "testdata/inference/verify");
+        input = testFile;
+    }
+
+    @Override
+    public Pair<String, List<String>> getSolverNameAndOptions() {
+        // Nested class, so the binary name
+        return Pair.<String, List<String>> of(InconsistentSolverEngine.class.getName(),
+                new ArrayList<String>(Arrays.asList("useGraph=false", "collectStatistic=true",
+                        PICOSolverEngine.VERIFY + "=true")));
+    }
+
+    @Override
+    public boolean useHacks() {
+        return true;
+    }
+
+    @Override
+    public void run() {
+        File verified = new File("pico-verify-result.txt");
+        verified.delete();
+        try {
+            super.run();
+        } catch (AssertionError e) {
+            // Expected, the inserted solutions don't type check either
+        }
+        try {
+            List<String> lines = Files.readAllLines(verified.toPath());
+            Assert.assertTrue("No unit of " + input + " checked: " + lines, lines.contains("CheckedUnits,1"));
+            Assert.assertFalse("Injected solutions of " + input + " not reported: " + lines, lines.contains("Errors,0"));
+        } catch (IOException e) {
+            throw new AssertionError("No verification result written to " + verified, e);
+        }
+    }
+
+    @Parameters
+    public static List<File> getTestFiles(){
+        return new ArrayList<>(TestUtilities.findRelativeNestedJavaFiles("testinput", "inference/verify"));
+    }
+
+    /**Solves with the default MaxSat backend, then replaces every solution with @Readonly*/
+    public static class InconsistentSolverEngine extends PICOSolverEngine {
+
+        @Override
+        protected SolverFactory createSolverFactory() {
+            return new MaxSatSolverFactory() {
+                @Override
+                public MaxSatFormatTranslator createFormatTranslator(Lattice lattice) {
+                    return new PICOFormatTranslator(lattice);
+                }
+
+                @Override
+                public Solver<?> createSolver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
+                                              Collection<Constraint> constraints, Lattice lattice) {
+                    return new MaxSatSolver(solverEnvironment, slots, constraints, createFormatTranslator(lattice), lattice) {
+                        @Override
+                        public Map<Integer, AnnotationMirror> solve() {
+                            Map<Integer, AnnotationMirror> solutions = super.solve();
+                            if (solutions != null) {
+                                solutions.replaceAll((id, solution) -> PICOAnnotationMirrorHolder.READONLY);
+                            }
+                            return solutions;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package pico.inference;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.VariableSlot;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import pico.PICOBenchmark;
+import scenelib.annotations.io.ASTIndex;
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTRecord;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the locations of every tree of a few generated classes in {@link PICOSlotLocations}, enough to rehash
+ * the table, and checks that each is found again and decodes to an equal location.
+ */
+public class PICOSlotLocationsTest {
+
+    private static final File DIR = new File("testTmp/slotlocations");
+    private static final int CLASSES = 20;
+
+    @Test
+    public void decodesStoredLocations() throws IOException {
+        List<ASTRecord> records = parse(generate(DIR, "slotlocations", CLASSES));
+
+        PICOSlotLocations arena = new PICOSlotLocations();
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < records.size(); id++) {
+            AstPathLocation location = new AstPathLocation(copy(records.get(id)));
+            int existing = arena.lookup(location);
+            if (existing < 0) {
+                arena.store(id, location);
+                existing = id;
+            }
+            ids.add(existing);
+        }
+        Assert.assertEquals(records.size() - arena.getShared(), arena.getStored());
+        // The table starts with 1024 buckets and grows past half full
+        Assert.assertTrue("Too few locations to rehash: " + arena.getStored(), arena.getStored() > 512);
+        for (int id = 0; id < records.size(); id++) {
+            AstPathLocation location = new AstPathLocation(copy(records.get(id)));
+            Assert.assertEquals(ids.get(id).intValue(), arena.lookup(location));
+            AnnotationLocation decoded = arena.locationOf(new VariableSlot(AnnotationLocation.MISSING_LOCATION, ids.get(id)));
+            Assert.assertEquals(location, decoded);
+        }
+        // Slots whose location isn't stored keep their own
+        VariableSlot unknown = new VariableSlot(AnnotationLocation.MISSING_LOCATION, records.size());
+        Assert.assertSame(AnnotationLocation.MISSING_LOCATION, arena.locationOf(unknown));
+    }
+
+    @AfterClass
+    public static void deleteGenerated() throws IOException {
+        PICOBenchmark.delete(DIR);
+    }
+
+    private static List<ASTRecord> parse(List<File> files) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+            JavacTask task = (JavacTask) compiler.getTask(null, fileManager, null, null, null, units);
+            List<ASTRecord> records = new ArrayList<>();
+            for (CompilationUnitTree unit : task.parse()) {
+                records.addAll(ASTIndex.indexOf(unit).values());
+            }
+            return records;
+        }
+    }
+
+    /**@return fresh copy of record, like VariableAnnotator builds one per slot*/
+    public static ASTRecord copy(ASTRecord record) {
+        ASTRecord copy = new ASTRecord(record.ast, record.className, record.methodName, record.varName, ASTPath.empty());
+        for (int i = 0; i < record.astPath.size(); i++) {
+            ASTPath.ASTEntry entry = record.astPath.get(i);
+            copy = copy.extend(entry.getTreeKind(), entry.getChildSelector(), entry.hasArgument() ? entry.getArgument() : -1);
+        }
+        return copy;
+    }
+
+    /**Fields, generic signatures, locals and nested expressions, so that paths get a few levels deep*/
+    public static List<File> generate(File dir, String pkg, int count) throws IOException {
+        return PICOBenchmark.generate(dir, pkg, "L", count, (i, pw) -> {
+            pw.println("import java.util.*;");
+            pw.println("public class L" + i + " {");
+            pw.println("    List<Map<String, int[]>> table = new ArrayList<>();");
+            pw.println("    Object[] cells = new Object[4];");
+            pw.println("    <T extends Comparable<T>> T max(List<? extends T> values, T fallback) {");
+            pw.println("        T best = fallback;");
+            pw.println("        for (T v : values) {");
+            pw.println("            if (v.compareTo(best) > 0) {");
+            pw.println("                best = v;");
+            pw.println("            }");
+            pw.println("        }");
+            pw.println("        return best;");
+            pw.println("    }");
+            pw.println("    Map<String, int[]> row(int i) {");
+            pw.println("        Map<String, int[]> r = new HashMap<>();");
+            pw.println("        r.put(\"" + i + "\", new int[] {i, i + 1});");
+            pw.println("        table.add(r);");
+            pw.println("        return r;");
+            pw.println("    }");
+            pw.println("}");
+        });
+    }
+}
@@ -0,0 +1,168 @@
+package pico.inference.solver;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the per tier optimum of {@link PICOTieredMaxSatSolver#solveTier} against brute force over all
+ * assignments of small random instances, solving the tiers heaviest first like the solver does. Random
+ * clauses include tautologies and repeated literals.
+ */
+public class PICOTieredMaxSatSolverTest {
+
+    private static final int VARS = 8;
+    private static final int INSTANCES = 2000;
+
+    @Test
+    public void heavierTierWinsOverWeightedSum() throws Exception {
+        // Weighted, x1 costs 2 and !x1 costs 3. Tiered, the heavier preference x1 must hold
+        List<int[]> hard = new ArrayList<>();
+        List<List<int[]>> tiers = Arrays.asList(
+                Arrays.asList(new int[]{1}),
+                Arrays.asList(new int[]{-1}, new int[]{-1}, new int[]{-1}));
+        Assert.assertArrayEquals(new int[]{0, 3}, solve(1, hard, tiers));
+        Assert.assertArrayEquals(new int[]{0, 3}, bruteForce(1, hard, tiers));
+    }
+
+    @Test
+    public void preferenceFalseAtRootLevel() throws Exception {
+        // With x5 locked by the first tier and !x4 hard, sat4j explains the second tier's conflict with an empty core
+        List<int[]> hard = Arrays.asList(new int[]{-4}, new int[]{-2});
+        List<List<int[]>> tiers = Arrays.asList(
+                Arrays.asList(new int[]{1}, new int[]{5, -8}, new int[]{2, 8}, new int[]{-1}),
+                Arrays.asList(new int[]{7, -5}, new int[]{-5}, new int[]{4}));
+        Assert.assertArrayEquals(new int[]{1, 2}, bruteForce(VARS, hard, tiers));
+        Assert.assertArrayEquals(new int[]{1, 2}, solve(VARS, hard, tiers));
+    }
+
+    @Test
+    public void matchesBruteForce() throws Exception {
+        Random random = new Random(42);
+        int solved = 0;
+        for (int instance = 0; instance < INSTANCES; instance++) {
+            List<int[]> hard = randomClauses(random, random.nextInt(12), 3);
+            List<List<int[]>> tiers = new ArrayList<>();
+            for (int tier = random.nextInt(3) + 1; tier > 0; tier--) {
+                tiers.add(randomClauses(random, random.nextInt(8) + 1, 2));
+            }
+            int[] expected = bruteForce(VARS, hard, tiers);
+            if (expected == null) {
+                continue;
+            }
+            Assert.assertArrayEquals("Instance " + instance, expected, solve(VARS, hard, tiers));
+            solved++;
+        }
+        Assert.assertTrue("Too few satisfiable instances: " + solved, solved > INSTANCES / 2);
+    }
+
+    /**@return cost of each tier found by solveTier, checked against the final model*/
+    private static int[] solve(int vars, List<int[]> hard, List<List<int[]>> tiers)
+            throws ContradictionException, TimeoutException {
+        int preferences = 0;
+        for (List<int[]> tier : tiers) {
+            preferences += tier.size();
+        }
+        ISolver solver = SolverFactory.newDefault();
+        solver.setKeepSolverHot(true);
+        solver.newVar(vars + preferences);
+        for (int[] clause : hard) {
+            solver.addClause(new VecInt(clause));
+        }
+        // Like the solver, every tier is added before the first call
+        int nextVar = vars;
+        List<int[]> relaxations = new ArrayList<>();
+        for (List<int[]> clauses : tiers) {
+            List<VecInt> tier = new ArrayList<>();
+            for (int[] clause : clauses) {
+                tier.add(new VecInt(clause));
+            }
+            int[] tierRelaxations = PICOTieredMaxSatSolver.relax(solver, tier, nextVar);
+            nextVar += tierRelaxations.length;
+            relaxations.add(tierRelaxations);
+        }
+        Assert.assertTrue(solver.isSatisfiable());
+        int[] costs = new int[tiers.size()];
+        for (int t = 0; t < tiers.size(); t++) {
+            costs[t] = PICOTieredMaxSatSolver.solveTier(solver, relaxations.get(t));
+        }
+        boolean[] assignment = new boolean[vars + 1];
+        for (int lit : solver.model()) {
+            if (Math.abs(lit) <= vars) {
+                assignment[Math.abs(lit)] = lit > 0;
+            }
+        }
+        Assert.assertEquals(0, unsatisfied(hard, assignment));
+        for (int t = 0; t < tiers.size(); t++) {
+            Assert.assertEquals("Model cost of tier " + t, costs[t], unsatisfied(tiers.get(t), assignment));
+        }
+        return costs;
+    }
+
+    /**@return lexicographically least tier costs over all assignments satisfying hard, null if there is none*/
+    private static int[] bruteForce(int vars, List<int[]> hard, List<List<int[]>> tiers) {
+        int[] best = null;
+        boolean[] assignment = new boolean[vars + 1];
+        for (int bits = 0; bits < 1 << vars; bits++) {
+            for (int v = 1; v <= vars; v++) {
+                assignment[v] = (bits & (1 << (v - 1))) != 0;
+            }
+            if (unsatisfied(hard, assignment) > 0) {
+                continue;
+            }
+            int[] costs = new int[tiers.size()];
+            for (int t = 0; t < tiers.size(); t++) {
+                costs[t] = unsatisfied(tiers.get(t), assignment);
+            }
+            if (best == null || compare(costs, best) < 0) {
+                best = costs;
+            }
+        }
+        return best;
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+
+    private static int unsatisfied(List<int[]> clauses, boolean[] assignment) {
+        int count = 0;
+        for (int[] clause : clauses) {
+            boolean satisfied = false;
+            for (int lit : clause) {
+                satisfied |= assignment[Math.abs(lit)] == lit > 0;
+            }
+            if (!satisfied) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<int[]> randomClauses(Random random, int count, int maxLength) {
+        List<int[]> clauses = new ArrayList<>();
+        for (int c = 0; c < count; c++) {
+            int[] clause = new int[random.nextInt(maxLength) + 1];
+            for (int i = 0; i < clause.length; i++) {
+                int var = random.nextInt(VARS) + 1;
+                clause[i] = random.nextBoolean() ? var : -var;
+            }
+            clauses.add(clause);
+        }
+        return clauses;
+    }
+}
@@ -0,0 +1,139 @@
+package pico.inference.solver;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link PICOUnsatCore#extract} returns an unsatisfiable set of groups from which no group can be
+ * dropped, on hand-built and small random instances.
+ */
+public class PICOUnsatCoreTest {
+
+    private static final int VARS = 6;
+    private static final int INSTANCES = 500;
+
+    @Test
+    public void onlyConflictingGroups() throws Exception {
+        List<List<int[]>> groups = Arrays.asList(
+                group(new int[]{2}),
+                group(new int[]{1}),
+                group(new int[]{-3, 2}),
+                group(new int[]{-1, 3}),
+                group(new int[]{-3}));
+        Assert.assertEquals(Arrays.asList(1, 3, 4), extract(Collections.emptyList(), groups, 3));
+    }
+
+    @Test
+    public void groupFalseAtRootLevel() throws Exception {
+        // The background decides x1 before any selector is assumed
+        List<int[]> background = Arrays.asList(new int[]{-1});
+        List<List<int[]>> groups = Arrays.asList(group(new int[]{2}), group(new int[]{1}));
+        Assert.assertEquals(Arrays.asList(1), extract(background, groups, 2));
+    }
+
+    @Test
+    public void satisfiableOrUnsatisfiableBackground() throws Exception {
+        List<List<int[]>> groups = Arrays.asList(group(new int[]{1}), group(new int[]{-2}));
+        Assert.assertEquals(Collections.emptyList(), extract(Collections.emptyList(), groups, 2));
+        // Not contradictory clause by clause, only the search finds out
+        List<int[]> background = Arrays.asList(new int[]{1, 2}, new int[]{1, -2}, new int[]{-1, 2}, new int[]{-1, -2});
+        Assert.assertEquals(Collections.emptyList(), extract(background, groups, 2));
+    }
+
+    @Test
+    public void minimalOnRandomInstances() throws Exception {
+        Random random = new Random(42);
+        int unsatisfiable = 0;
+        for (int instance = 0; instance < INSTANCES; instance++) {
+            List<int[]> background = randomClauses(random, random.nextInt(4), 3);
+            List<List<int[]>> groups = new ArrayList<>();
+            for (int g = random.nextInt(10) + 1; g > 0; g--) {
+                groups.add(randomClauses(random, random.nextInt(2) + 1, 2));
+            }
+            List<Integer> all = new ArrayList<>();
+            for (int g = 0; g < groups.size(); g++) {
+                all.add(g);
+            }
+            List<Integer> core = extract(background, groups, VARS);
+            if (!satisfiable(background, Collections.emptyList(), groups) && satisfiable(background, all, groups)) {
+                Assert.fail("Instance " + instance + ": unsatisfiable groups without core");
+            }
+            if (core.isEmpty()) {
+                continue;
+            }
+            unsatisfiable++;
+            Assert.assertFalse("Instance " + instance + ": core " + core, satisfiable(background, core, groups));
+            for (int i = 0; i < core.size(); i++) {
+                List<Integer> without = new ArrayList<>(core);
+                without.remove(i);
+                Assert.assertTrue("Instance " + instance + ": core " + core + " without " + core.get(i),
+                        satisfiable(background, without, groups));
+            }
+        }
+        Assert.assertTrue("Too few unsatisfiable instances: " + unsatisfiable, unsatisfiable > INSTANCES / 10);
+    }
+
+    private static List<Integer> extract(List<int[]> background, List<List<int[]>> groups, int maxVar)
+            throws TimeoutException {
+        PICOUnsatCore unsatCore = new PICOUnsatCore();
+        for (List<int[]> group : groups) {
+            unsatCore.addGroup(vecs(group));
+        }
+        return unsatCore.extract(vecs(background), maxVar);
+    }
+
+    /**Brute force, whether background and the chosen groups hold together*/
+    private static boolean satisfiable(List<int[]> background, List<Integer> chosen, List<List<int[]>> groups) {
+        List<int[]> clauses = new ArrayList<>(background);
+        for (Integer g : chosen) {
+            clauses.addAll(groups.get(g));
+        }
+        for (int bits = 0; bits < 1 << VARS; bits++) {
+            boolean all = true;
+            for (int[] clause : clauses) {
+                boolean satisfied = false;
+                for (int lit : clause) {
+                    satisfied |= ((bits & (1 << (Math.abs(lit) - 1))) != 0) == lit > 0;
+                }
+                all &= satisfied;
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<int[]> group(int[]... clauses) {
+        return Arrays.asList(clauses);
+    }
+
+    private static List<VecInt> vecs(List<int[]> clauses) {
+        List<VecInt> result = new ArrayList<>();
+        for (int[] clause : clauses) {
+            result.add(new VecInt(clause));
+        }
+        return result;
+    }
+
+    private static List<int[]> randomClauses(Random random, int count, int maxLength) {
+        List<int[]> clauses = new ArrayList<>();
+        for (int c = 0; c < count; c++) {
+            int[] clause = new int[random.nextInt(maxLength) + 1];
+            for (int i = 0; i < clause.length; i++) {
+                int var = random.nextInt(VARS) + 1;
+                clause[i] = random.nextBoolean() ? var : -var;
+            }
+            clauses.add(clause);
+        }
+        return clauses;
+    }
+}
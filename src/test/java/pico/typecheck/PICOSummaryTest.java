@@ -0,0 +1,100 @@
+package pico.typecheck;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.UserError;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import pico.PICOBenchmark;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typechecks testinput/summary as a module with option summaryOut, loads the summary it writes and looks
+ * up the bounds of its classes. Also checks that files that aren't summaries of this version are rejected.
+ */
+public class PICOSummaryTest {
+
+    private static final File DIR = new File("testTmp/summary");
+
+    @Test
+    public void classBoundsRoundTrip() throws IOException {
+        Assert.assertTrue(DIR.isDirectory() || DIR.mkdirs());
+        File file = new File(DIR, "module.psum");
+        RoundTripChecker checker = new RoundTripChecker(file);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null,
+                    Arrays.asList("-Anomsgtext", "-Anocheckjdk", "-A" + PICOSummary.SUMMARY_OUT + "=" + file,
+                            "-d", DIR.getPath()),
+                    null, fileManager.getJavaFileObjects(new File("testinput/summary/SummaryModule.java")));
+            task.setProcessors(Collections.singleton(checker));
+            // The result doesn't matter, only the bounds the summary has for the classes
+            task.call();
+        }
+
+        Assert.assertTrue(AnnotationUtils.areSame(PICOAnnotationMirrorHolder.IMMUTABLE,
+                checker.bounds.get("summary.ImmutableBox")));
+        Assert.assertTrue(AnnotationUtils.areSame(PICOAnnotationMirrorHolder.RECEIVER_DEPENDANT_MUTABLE,
+                checker.bounds.get("summary.RdmBox")));
+        Assert.assertTrue(AnnotationUtils.areSame(PICOAnnotationMirrorHolder.MUTABLE,
+                checker.bounds.get("summary.MutableBox")));
+    }
+
+    @Test(expected = UserError.class)
+    public void rejectsOtherFiles() throws IOException {
+        Assert.assertTrue(DIR.isDirectory() || DIR.mkdirs());
+        File file = new File(DIR, "other.psum");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeBytes("not a summary");
+        }
+        PICOSummary.load(file);
+    }
+
+    @Test(expected = UserError.class)
+    public void rejectsOtherVersions() throws IOException {
+        Assert.assertTrue(DIR.isDirectory() || DIR.mkdirs());
+        File file = new File(DIR, "version.psum");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeBytes("PSUM");
+            out.writeInt(PICOSummary.VERSION + 1);
+        }
+        PICOSummary.load(file);
+    }
+
+    @AfterClass
+    public static void deleteGenerated() throws IOException {
+        PICOBenchmark.delete(DIR);
+    }
+
+    /**Writes the summary once every class is checked, then loads it again and looks up the class bounds*/
+    private static class RoundTripChecker extends PICOChecker {
+        private final File file;
+        private final Map<String, AnnotationMirror> bounds = new HashMap<>();
+
+        RoundTripChecker(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void typeProcessingOver() {
+            ((PICOVisitor) visitor).summary.write(file);
+            PICOSummary summary = PICOSummary.load(file);
+            for (String name : Arrays.asList("summary.ImmutableBox", "summary.RdmBox", "summary.MutableBox")) {
+                bounds.put(name, summary.getClassBound(getElementUtils().getTypeElement(name)));
+            }
+            super.typeProcessingOver();
+        }
+    }
+}
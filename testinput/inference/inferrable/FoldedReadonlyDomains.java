@@ -0,0 +1,24 @@
+import qual.Readonly;
+
+// Nothing but the slot domains recorded by PICOInferenceVisitor#mainIsNot keeps @Readonly off the class
+// bound, the constructor return and the receiver of set: none of them has a constraint against a constant.
+// If a domain were lost, the solution could pick @Readonly there and the inserted code wouldn't typecheck.
+public class FoldedReadonlyDomains {
+
+    Object f;
+
+    FoldedReadonlyDomains() {}
+
+    void set(Object v) {
+        this.f = v;
+    }
+
+    Object get(@Readonly FoldedReadonlyDomains this) {
+        return f;
+    }
+
+    static void use() {
+        FoldedReadonlyDomains d = new FoldedReadonlyDomains();
+        d.set(d.get());
+    }
+}
@@ -0,0 +1,11 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// The receiver of a method of a generic class is left to AFU by the direct insertion of -direct
+public class InsertionFallback<T> {
+    List<T> items = new ArrayList<>();
+
+    T first() {
+        return items.get(0);
+    }
+}
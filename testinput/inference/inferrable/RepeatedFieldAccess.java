@@ -0,0 +1,23 @@
+// Every this.a.x combines the same receiver and declared slots, so the first access creates the
+// CombineConstraints and the others reuse them
+public class RepeatedFieldAccess {
+    Holder a;
+
+    Object read() {
+        Object o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        o = this.a.x;
+        return o;
+    }
+}
+
+class Holder {
+    Object x;
+}
@@ -0,0 +1,32 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Raw uses of the same class and occurrences of the same unbounded wildcard are visited many times.
+// Every use must still get "? extends @Mutable Object" and the same solutions as a single use.
+public class RepeatedRawAndWildcardUses {
+
+    List first = new ArrayList();
+    List second = new ArrayList();
+
+    public void copy(List from, List to) {
+        Iterator fromIterator = from.iterator();
+        Iterator toIterator = to.iterator();
+        while (fromIterator.hasNext() && toIterator.hasNext()) {
+            Object o = fromIterator.next();
+            o.hashCode();
+            toIterator.next();
+        }
+        first.addAll(from);
+        second.addAll(to);
+    }
+
+    public int count(List<?> values, Map<String, ?> named, List<?> others) {
+        int n = values.size() + others.size();
+        for (Object value : values) {
+            n += named.containsKey(String.valueOf(value)) ? 1 : 0;
+        }
+        return n;
+    }
+}
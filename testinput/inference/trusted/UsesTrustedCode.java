@@ -0,0 +1,10 @@
+import trustedgen.Generated;
+
+// Generated is trusted: reading its field and calling its method must not create slots for their declarations
+public class UsesTrustedCode {
+
+    Object use(Generated generated) {
+        Object part = generated.value;
+        return generated.build(part);
+    }
+}
@@ -0,0 +1,11 @@
+package trustedgen;
+
+// Stands for generated code. Found through -sourcepath and trusted by -AtrustedPackages=trustedgen
+public class Generated {
+
+    public Object value = new Object();
+
+    public Object build(Object part) {
+        return part;
+    }
+}
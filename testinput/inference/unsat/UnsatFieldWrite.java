@@ -0,0 +1,17 @@
+import qual.Immutable;
+import qual.ReceiverDependantMutable;
+
+// Writing a field needs a mutable receiver, passing the receiver on needs an immutable one
+@ReceiverDependantMutable
+public class UnsatFieldWrite {
+    Object f;
+
+    static void expectImmutable(@Immutable UnsatFieldWrite o) {}
+
+    static void write(UnsatFieldWrite o) {
+        // :: error: (argument.type.incompatible)
+        expectImmutable(o);
+        // unsat core: illegal.field.write
+        o.f = null;
+    }
+}
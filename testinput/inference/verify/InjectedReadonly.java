@@ -0,0 +1,9 @@
+// The solver of VerifyInferenceTest replaces every solution with @Readonly, so the receiver of set is
+// @Readonly and the field write has to be reported by verification
+public class InjectedReadonly {
+    Object f;
+
+    void set(Object v) {
+        this.f = v;
+    }
+}
@@ -0,0 +1,18 @@
+package summary;
+
+import qual.Immutable;
+import qual.ReceiverDependantMutable;
+
+@Immutable
+class ImmutableBox {
+    final int value = 0;
+}
+
+@ReceiverDependantMutable
+class RdmBox {
+    Object content;
+}
+
+class MutableBox {
+    Object content;
+}
@@ -0,0 +1,32 @@
+package typecheck;
+
+import qual.Immutable;
+import qual.Mutable;
+import qual.Readonly;
+
+// Methods that only read final fields with initializers still get the initializer's type from dataflow
+public class FinalFieldRefinement {
+    final @Readonly Object immutable = new @Immutable Object();
+    final @Readonly Object mutable = new @Mutable Object();
+    @Readonly Object notFinal = new @Immutable Object();
+
+    static void accept(@Immutable Object o) {}
+
+    void readsImmutable() {
+        accept(immutable);
+    }
+
+    void readsThroughReceiver() {
+        accept(this.immutable);
+    }
+
+    void readsMutable() {
+        // :: error: (argument.type.incompatible)
+        accept(mutable);
+    }
+
+    void readsNotFinal() {
+        // :: error: (argument.type.incompatible)
+        accept(notFinal);
+    }
+}
@@ -0,0 +1,22 @@
+package typecheck;
+
+import qual.Mutable;
+import qual.Readonly;
+
+public class FlowRefinedCompoundAssignment {
+    int counter = 0;
+
+    void compound(@Readonly FlowRefinedCompoundAssignment p) {
+        @Readonly FlowRefinedCompoundAssignment a = p;
+        // :: error: (illegal.field.write)
+        a.counter += 1;
+        a = new @Mutable FlowRefinedCompoundAssignment();
+        // a is refined to @Mutable here
+        a.counter += 1;
+        a.counter++;
+        a = p;
+        // Refined back to @Readonly
+        // :: error: (illegal.field.write)
+        a.counter += 1;
+    }
+}
@@ -0,0 +1,27 @@
+package typecheck;
+
+import org.checkerframework.checker.initialization.qual.UnderInitialization;
+import qual.Immutable;
+
+@Immutable
+public class InitializingReceiverWrites {
+    int a = 0;
+    int b = 0;
+
+    @Immutable InitializingReceiverWrites() {
+        // Parenthesized "this" is still the object being initialized
+        (this).a = 1;
+        ((this)).b = 2;
+    }
+
+    // The receiver is being initialized, whatever class it is initialized up to
+    void reset(@UnderInitialization(InitializingReceiverWrites.class) @Immutable InitializingReceiverWrites this) {
+        this.a = 0;
+        (this).b = 0;
+    }
+
+    void mutate(@Immutable InitializingReceiverWrites this) {
+        // :: error: (illegal.field.write)
+        (this).a = 3;
+    }
+}
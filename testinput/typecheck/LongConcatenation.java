@@ -0,0 +1,50 @@
+package typecheck;
+
+import qual.Immutable;
+
+// Generated templates concatenate hundreds of operands in one expression
+public class LongConcatenation {
+    @Immutable String concat(int i, Object o) {
+        @Immutable String s = "s0" + i + "s2" + o + "s4" + i + "s6" + i + "s8" + o
+                + "s10" + i + "s12" + i + "s14" + o + "s16" + i + "s18" + i
+                + "s20" + o + "s22" + i + "s24" + i + "s26" + o + "s28" + i
+                + "s30" + i + "s32" + o + "s34" + i + "s36" + i + "s38" + o
+                + "s40" + i + "s42" + i + "s44" + o + "s46" + i + "s48" + i
+                + "s50" + o + "s52" + i + "s54" + i + "s56" + o + "s58" + i
+                + "s60" + i + "s62" + o + "s64" + i + "s66" + i + "s68" + o
+                + "s70" + i + "s72" + i + "s74" + o + "s76" + i + "s78" + i
+                + "s80" + o + "s82" + i + "s84" + i + "s86" + o + "s88" + i
+                + "s90" + i + "s92" + o + "s94" + i + "s96" + i + "s98" + o
+                + "s100" + i + "s102" + i + "s104" + o + "s106" + i + "s108" + i
+                + "s110" + o + "s112" + i + "s114" + i + "s116" + o + "s118" + i
+                + "s120" + i + "s122" + o + "s124" + i + "s126" + i + "s128" + o
+                + "s130" + i + "s132" + i + "s134" + o + "s136" + i + "s138" + i
+                + "s140" + o + "s142" + i + "s144" + i + "s146" + o + "s148" + i
+                + "s150" + i + "s152" + o + "s154" + i + "s156" + i + "s158" + o
+                + "s160" + i + "s162" + i + "s164" + o + "s166" + i + "s168" + i
+                + "s170" + o + "s172" + i + "s174" + i + "s176" + o + "s178" + i
+                + "s180" + i + "s182" + o + "s184" + i + "s186" + i + "s188" + o
+                + "s190" + i + "s192" + i + "s194" + o + "s196" + i + "s198" + i
+                + "s200" + o + "s202" + i + "s204" + i + "s206" + o + "s208" + i
+                + "s210" + i + "s212" + o + "s214" + i + "s216" + i + "s218" + o
+                + "s220" + i + "s222" + i + "s224" + o + "s226" + i + "s228" + i
+                + "s230" + o + "s232" + i + "s234" + i + "s236" + o + "s238" + i
+                + "s240" + i + "s242" + o + "s244" + i + "s246" + i + "s248" + o
+                + "s250" + i + "s252" + i + "s254" + o + "s256" + i + "s258" + i
+                + "s260" + o + "s262" + i + "s264" + i + "s266" + o + "s268" + i
+                + "s270" + i + "s272" + o + "s274" + i + "s276" + i + "s278" + o
+                + "s280" + i + "s282" + i + "s284" + o + "s286" + i + "s288" + i
+                + "s290" + o + "s292" + i + "s294" + i + "s296" + o + "s298" + i
+                + "s300" + i + "s302" + o + "s304" + i + "s306" + i + "s308" + o
+                + "s310" + i + "s312" + i + "s314" + o + "s316" + i + "s318" + i
+                + "s320" + o + "s322" + i + "s324" + i + "s326" + o + "s328" + i
+                + "s330" + i + "s332" + o + "s334" + i + "s336" + i + "s338" + o
+                + "s340" + i + "s342" + i + "s344" + o + "s346" + i + "s348" + i
+                + "s350" + o + "s352" + i + "s354" + i + "s356" + o + "s358" + i
+                + "s360" + i + "s362" + o + "s364" + i + "s366" + i + "s368" + o
+                + "s370" + i + "s372" + i + "s374" + o + "s376" + i + "s378" + i
+                + "s380" + o + "s382" + i + "s384" + i + "s386" + o + "s388" + i
+                + "s390" + i + "s392" + o + "s394" + i + "s396" + i + "s398" + o;
+        return s;
+    }
+}
@@ -0,0 +1,31 @@
+package typecheck;
+
+import qual.Immutable;
+import qual.Mutable;
+import qual.Readonly;
+
+// Locals refined in loops: joins of equal values are shortcut, unequal ones must still widen
+public class LoopRefinement {
+    void same(@Immutable Object a, @Immutable Object b, int n) {
+        @Readonly Object x = a;
+        @Readonly Object y = b;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                x = i > j ? a : b;
+                y = x;
+            }
+        }
+        @Immutable Object stillImmutable = y;
+    }
+
+    void widened(@Immutable Object a, @Mutable Object m, int n) {
+        @Readonly Object x = a;
+        while (n-- > 0) {
+            if (n % 2 == 0) {
+                x = m;
+            }
+        }
+        // :: error: (assignment.type.incompatible)
+        @Immutable Object notImmutable = x;
+    }
+}
@@ -0,0 +1,23 @@
+package typecheck;
+
+import qual.ReceiverDependantMutable;
+
+public class StaticInitializerAnonymousClass {
+    static Object o;
+
+    static {
+        // :: error: (static.receiverdependantmutable.forbidden)
+        new @ReceiverDependantMutable Object();
+        o = new Object() {
+            // Members of the anonymous class aren't static, even though the class is created in a static initializer
+            @ReceiverDependantMutable Object field;
+
+            void m() {
+                new @ReceiverDependantMutable Object();
+            }
+        };
+        // Back in the static initializer after the anonymous class
+        // :: error: (static.receiverdependantmutable.forbidden)
+        new @ReceiverDependantMutable Object();
+    }
+}